@@ -0,0 +1,289 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 在进程内的mini cluster上跑端到端基准测试，不依赖node2,node3,node4集群
+ * 负载：insert 批量写入、get 随机点查、scan 按月范围扫描、filter 带type过滤的按月扫描、
+ * protobuf 重建表后写入protobuf格式并用CallLogProtobufFilter扫描
+ * 结果（ops/sec和p50/p99/p999延迟）写成JSON文件，便于不同提交之间对比
+ *
+ * 用法：mvn -Pbenchmark compile exec:exec@minicluster -Dbenchmark.args="--users 10 --records 10000"
+ * 参数：--users 用户数 --records 每个用户的记录数 --batch 每批Put条数 --gets 点查次数 --scans 扫描次数
+ *      --workloads insert,get,scan,filter,protobuf --output 结果文件
+ */
+public class CallLogBenchmarkRunner {
+    private int users = 10;
+    private int records = 10000;
+    private int batch = 1000;
+    private int gets = 10000;
+    private int scans = 200;
+    private List<String> workloads = Arrays.asList("insert", "get", "scan", "filter", "protobuf");
+    private String output = "target/minicluster-benchmark.json";
+
+    private final Random random = new Random(42);
+    private final List<String> phoneNumbers = new ArrayList<>();
+    private final List<String> rowkeys = new ArrayList<>();
+    private final List<Map<String, Object>> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        CallLogBenchmarkRunner runner = new CallLogBenchmarkRunner();
+        runner.parse(args);
+        HBaseTestingUtility util = new HBaseTestingUtility();
+        // Maven中央仓库的hbase 2.0.5按hadoop 2编译，asyncfs WAL在hadoop 3上不可用
+        util.getConfiguration().set("hbase.wal.provider", "filesystem");
+        util.getConfiguration().set("hbase.wal.meta_provider", "filesystem");
+        util.startMiniCluster();
+        try {
+            CallLogDemo.init(util.getConnection());
+            runner.run();
+        } finally {
+            util.shutdownMiniCluster();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "--records":
+                    records = Integer.parseInt(value);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(value);
+                    break;
+                case "--gets":
+                    gets = Integer.parseInt(value);
+                    break;
+                case "--scans":
+                    scans = Integer.parseInt(value);
+                    break;
+                case "--workloads":
+                    workloads = Arrays.asList(value.split(","));
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数：" + args[i]);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        CallLogDemo.createTable(new String[]{"basic"});
+        // get、scan需要先写入数据
+        insert(false, workloads.contains("insert") ? "insert" : null);
+        if (workloads.contains("get")) {
+            get();
+        }
+        if (workloads.contains("scan")) {
+            scan("scan", null);
+        }
+        if (workloads.contains("filter")) {
+            scan("filter", 0);
+        }
+        if (workloads.contains("protobuf")) {
+            CallLogDemo.createTable(new String[]{"basic"});
+            insert(true, "protobufInsert");
+            protobufScan();
+        }
+        writeReport();
+    }
+
+    /**
+     * 与insertData()相同的数据分布（每个用户records条、2024年内均匀分布、被叫号码均匀选取），每batch条提交一次
+     * 数据全部由CallLogGenerator(42)生成，单线程按固定顺序写入，每次运行写入的数据完全相同，结果可以在不同提交之间对比
+     * @param name 为null时只准备数据不记录结果
+     */
+    private void insert(boolean protobuf, String name) throws Exception {
+        Table table = CallLogDemo.getTable();
+        phoneNumbers.clear();
+        rowkeys.clear();
+        CallLogGenerator generator = new CallLogGenerator(42)
+                .users(users)
+                .years(2024, 2024)
+                .recordsPerUser(records)
+                .threads(1);
+        for (int i = 0; i < users; i++) {
+            phoneNumbers.add(generator.getPhoneNumber(i));
+        }
+        LatencyRecorder latency = new LatencyRecorder();
+        List<Put> puts = new ArrayList<>(batch);
+        long start = System.nanoTime();
+        long inserted = generator.generate((user, sequence, phoneNumber, dnum, type, length, callTime) -> {
+            String date = CallLogGenerator.formatDate(callTime);
+            String rowkey = CallLogDemo.getRowKey(phoneNumber, callTime, sequence);
+            rowkeys.add(rowkey);
+            puts.add(protobuf ? CallLogDemo.createProtocolBufferPut(rowkey, dnum, type, length, date)
+                    : CallLogDemo.createPut(rowkey, dnum, type, length, date));
+            if (puts.size() == batch) {
+                flush(table, puts, latency);
+            }
+        });
+        if (!puts.isEmpty()) {
+            flush(table, puts, latency);
+        }
+        if (name != null) {
+            addResult(name, latency, inserted, System.nanoTime() - start);
+        }
+    }
+
+    private static void flush(Table table, List<Put> puts, LatencyRecorder latency) throws IOException {
+        long begin = System.nanoTime();
+        table.put(puts);
+        latency.record(System.nanoTime() - begin);
+        puts.clear();
+    }
+
+    private void get() throws IOException {
+        Table table = CallLogDemo.getTable();
+        LatencyRecorder latency = new LatencyRecorder();
+        long start = System.nanoTime();
+        for (int i = 0; i < gets; i++) {
+            Get get = new Get(Bytes.toBytes(rowkeys.get(random.nextInt(rowkeys.size()))));
+            long begin = System.nanoTime();
+            table.get(get);
+            latency.record(System.nanoTime() - begin);
+        }
+        addResult("get", latency, gets, System.nanoTime() - start);
+    }
+
+    /**
+     * 随机用户随机月份的范围扫描
+     * @param type 不为null时在服务端按type过滤
+     */
+    private void scan(String name, Integer type) throws Exception {
+        LatencyRecorder latency = new LatencyRecorder();
+        long rows = 0;
+        CallLogView view = new CallLogView();
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            int month = random.nextInt(12) + 1;
+            CallLogQuery query = CallLogQuery.forUser(phoneNumbers.get(random.nextInt(phoneNumbers.size())))
+                    .between(monthStart(month), monthStart(month + 1));
+            if (type != null) {
+                query.type(type);
+            }
+            long begin = System.nanoTime();
+            try (ResultScanner scanner = CallLogDemo.getScanner(query.toScan())) {
+                for (Result result : scanner) {
+                    view.wrap(result).getLength();
+                    rows++;
+                }
+            }
+            latency.record(System.nanoTime() - begin);
+        }
+        addResult(name, latency, rows, System.nanoTime() - start);
+    }
+
+    /**
+     * 与findByProtobufFilter()相同：按用户前缀和月份在服务端解码过滤
+     */
+    private void protobufScan() throws IOException {
+        LatencyRecorder latency = new LatencyRecorder();
+        long rows = 0;
+        CallLogProtobufView view = new CallLogProtobufView();
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            int month = random.nextInt(12) + 1;
+            String phoneNumber = phoneNumbers.get(random.nextInt(phoneNumbers.size()));
+            Scan scan = new Scan();
+            scan.withStartRow(Bytes.toBytes(phoneNumber + "_"));
+            scan.withStopRow(Bytes.toBytes(phoneNumber + "`"));
+            FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+            filterList.addFilter(new PrefixFilter(Bytes.toBytes(phoneNumber)));
+            filterList.addFilter(new CallLogProtobufFilter()
+                    .typeEquals(0)
+                    .dateBetween(monthStart(month), monthStart(month + 1)));
+            scan.setFilter(filterList);
+            long begin = System.nanoTime();
+            try (ResultScanner scanner = CallLogDemo.getTable().getScanner(scan)) {
+                for (Result result : scanner) {
+                    view.wrap(result.rawCells()[0]).getLength();
+                    rows++;
+                }
+            }
+            latency.record(System.nanoTime() - begin);
+        }
+        addResult("protobufScan", latency, rows, System.nanoTime() - start);
+    }
+
+    private static String monthStart(int month) {
+        return month > 12 ? "2025-01-01 00:00:00" : String.format("2024-%02d-01 00:00:00", month);
+    }
+
+    private void addResult(String name, LatencyRecorder latency, long rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("operations", latency.getCount());
+        result.put("rows", rows);
+        result.put("seconds", seconds);
+        result.put("opsPerSec", latency.getCount() / seconds);
+        result.put("rowsPerSec", rows / seconds);
+        result.put("p50Micros", latency.percentileMicros(0.5));
+        result.put("p99Micros", latency.percentileMicros(0.99));
+        result.put("p999Micros", latency.percentileMicros(0.999));
+        results.add(result);
+        System.out.println(result);
+    }
+
+    private void writeReport() throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("users", users);
+        config.put("records", records);
+        config.put("batch", batch);
+        config.put("gets", gets);
+        config.put("scans", scans);
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"timestamp\": ").append(System.currentTimeMillis())
+                .append(",\n  \"config\": ");
+        appendObject(json, config);
+        json.append(",\n  \"workloads\": [");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ");
+            appendObject(json, results.get(i));
+        }
+        json.append("\n  ]\n}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+        System.out.println("结果已写入" + output);
+    }
+
+    static void appendObject(StringBuilder json, Map<String, Object> object) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : object.entrySet()) {
+            if (!first) {
+                json.append(", ");
+            }
+            first = false;
+            json.append('"').append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                json.append('"').append(value).append('"');
+            } else if (value instanceof Double) {
+                json.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+            } else {
+                json.append(value);
+            }
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.calllog;
+
+import java.util.Arrays;
+
+/**
+ * 记录每次操作的耗时（纳秒），结束后排序求分位数
+ */
+class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count;
+
+    void record(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @param quantile 0~1，例如0.999
+     * @return 微秒
+     */
+    double percentileMicros(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1000.0;
+    }
+}
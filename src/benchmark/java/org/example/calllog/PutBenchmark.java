@@ -0,0 +1,60 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Put构造：按列存储、protobuf存储、二进制rowkey
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PutBenchmark {
+    private static final byte[] FAMILY = CallLogRecord.FAMILY;
+    private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+    private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+    private static final byte[] LENGTH = CallLogQuery.Field.LENGTH.getQualifier();
+    private static final byte[] DATE = CallLogQuery.Field.DATE.getQualifier();
+
+    private final String rowkey = "18661990012_9223370324984787969#0";
+    private final byte[] binaryRowkey = CallLogRowKey.encode(18661990012L, 1710477000000L, 3);
+    private final String dnum = "19961990012";
+    private final String date = "2024-03-15 12:30:00";
+
+    /**
+     * insertData()的写法：每次都把列族、列名转成字节
+     */
+    @Benchmark
+    public Put columnPut() {
+        return CallLogDemo.createPut(rowkey, dnum, 1, 127, date);
+    }
+
+    /**
+     * 列族、列名使用常量
+     */
+    @Benchmark
+    public Put columnPutWithConstants() {
+        Put put = new Put(Bytes.toBytes(rowkey));
+        put.addColumn(FAMILY, DNUM, Bytes.toBytes(dnum));
+        put.addColumn(FAMILY, TYPE, Bytes.toBytes(1));
+        put.addColumn(FAMILY, LENGTH, Bytes.toBytes(127));
+        put.addColumn(FAMILY, DATE, Bytes.toBytes(date));
+        return put;
+    }
+
+    @Benchmark
+    public Put binaryRowKeyPut() {
+        return CallLogDemo.createPut(binaryRowkey, dnum, 1, 127, date);
+    }
+
+    @Benchmark
+    public Put protobufPut() {
+        return CallLogDemo.createProtocolBufferPut(rowkey, dnum, 1, 127, date);
+    }
+}
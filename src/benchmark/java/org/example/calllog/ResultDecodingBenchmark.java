@@ -0,0 +1,98 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果解码：CellUtil.clone*复制后再转换 与 按偏移量直接读取
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultDecodingBenchmark {
+    private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+    private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+    private static final byte[] LENGTH = CallLogQuery.Field.LENGTH.getQualifier();
+
+    private Result columns;
+    private Result protobuf;
+    private final CallLogView view = new CallLogView();
+    private final CallLogProtobufView protobufView = new CallLogProtobufView();
+    private final StringBuilder builder = new StringBuilder(128);
+
+    @Setup
+    public void setup() {
+        String rowkey = "18661990012_9223370324984787969#0";
+        columns = toResult(CallLogDemo.createPut(rowkey, "19961990012", 1, 127, "2024-03-15 12:30:00"));
+        protobuf = toResult(CallLogDemo.createProtocolBufferPut(rowkey, "19961990012", 1, 127, "2024-03-15 12:30:00"));
+    }
+
+    /**
+     * 用Put中的单元格模拟一行查询结果
+     */
+    private static Result toResult(Put put) {
+        return Result.create(put.getFamilyCellMap().get(CallLogRecord.FAMILY));
+    }
+
+    /**
+     * App.getData()的写法：每个单元格复制行、列族、列名和值
+     */
+    @Benchmark
+    public void cloneColumns(Blackhole blackhole) {
+        for (Cell cell : columns.rawCells()) {
+            blackhole.consume(Bytes.toString(CellUtil.cloneRow(cell)));
+            blackhole.consume(Bytes.toString(CellUtil.cloneFamily(cell)));
+            blackhole.consume(Bytes.toString(CellUtil.cloneQualifier(cell)));
+            blackhole.consume(CellUtil.cloneValue(cell));
+        }
+    }
+
+    /**
+     * Result.getValue按列名查找后复制值
+     */
+    @Benchmark
+    public void getValueColumns(Blackhole blackhole) {
+        blackhole.consume(Bytes.toString(columns.getValue(CallLogRecord.FAMILY, DNUM)));
+        blackhole.consume(Bytes.toInt(columns.getValue(CallLogRecord.FAMILY, TYPE)));
+        blackhole.consume(Bytes.toInt(columns.getValue(CallLogRecord.FAMILY, LENGTH)));
+    }
+
+    /**
+     * CallLogView按偏移量读取，只有追加到StringBuilder时才解码字符
+     */
+    @Benchmark
+    public StringBuilder viewColumns() {
+        builder.setLength(0);
+        return view.wrap(columns).appendTo(builder);
+    }
+
+    @Benchmark
+    public void parseProtobuf(Blackhole blackhole) throws IOException {
+        CallLogOuterClass.CallLog callLog = CallLogOuterClass.CallLog.parseFrom(CellUtil.cloneValue(protobuf.rawCells()[0]));
+        blackhole.consume(callLog.getDnum());
+        blackhole.consume(callLog.getType());
+        blackhole.consume(callLog.getLength());
+        blackhole.consume(callLog.getDate());
+    }
+
+    /**
+     * 只读取type、length，不创建字符串
+     */
+    @Benchmark
+    public int viewProtobuf() throws IOException {
+        protobufView.wrap(protobuf.rawCells()[0]);
+        return protobufView.getType() + protobufView.getLength();
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.calllog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * rowkey构造：字符串拼接+SimpleDateFormat.parse 与 18字节二进制rowkey
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowKeyBenchmark {
+    private final String phoneNumber = "18661990012";
+    private final long phone = 18661990012L;
+    private final String date = "2024-03-15 12:30:00";
+    private long callTime;
+    private final byte[] buffer = new byte[CallLogRowKey.LENGTH];
+
+    @Setup
+    public void setup() throws ParseException {
+        callTime = CallLogDemo.sdf.parse(date).getTime();
+    }
+
+    /**
+     * insertData()中的写法：解析日期字符串再拼接
+     */
+    @Benchmark
+    public byte[] stringRowKey() throws ParseException {
+        return CallLogDemo.getRowKey(phoneNumber, date, 1, 2).getBytes();
+    }
+
+    /**
+     * 已有毫秒时间戳时只做字符串拼接
+     */
+    @Benchmark
+    public byte[] stringRowKeyFromMillis() {
+        return CallLogDemo.getRowKey(phoneNumber, callTime, 3).getBytes();
+    }
+
+    @Benchmark
+    public byte[] binaryRowKey() {
+        return CallLogRowKey.encode(phone, callTime, 3);
+    }
+
+    /**
+     * 写入复用的数组，不分配
+     */
+    @Benchmark
+    public byte[] binaryRowKeyInto() {
+        CallLogRowKey.encode(buffer, 0, phone, callTime, 3);
+        return buffer;
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.HStore;
+import org.example.TableProfile;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 在mini cluster上比较各个TableProfile：同一份数据（固定seed）分别写入，flush并major compaction后统计
+ * 存活HFile的总大小、全表扫描速度和随机点查延迟，结果写成JSON文件
+ *
+ * 用法：mvn -Pbenchmark compile exec:exec@tableprofiles -Dbenchmark.args="--users 20 --records 5000"
+ * 参数：--users 用户数 --records 每个用户的记录数 --gets 点查次数
+ *      --profiles DEFAULT,WRITE_HEAVY_CDR,READ_HEAVY_LOOKUP,ARCHIVAL --output 结果文件
+ */
+public class TableProfileBenchmark {
+    private int users = 20;
+    private int records = 5000;
+    private int gets = 5000;
+    private List<TableProfile> profiles = Arrays.asList(TableProfile.values());
+    private String output = "target/table-profile-benchmark.json";
+
+    private final List<Map<String, Object>> results = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        TableProfileBenchmark benchmark = new TableProfileBenchmark();
+        benchmark.parse(args);
+        HBaseTestingUtility util = new HBaseTestingUtility();
+        // Maven中央仓库的hbase 2.0.5按hadoop 2编译，asyncfs WAL在hadoop 3上不可用
+        util.getConfiguration().set("hbase.wal.provider", "filesystem");
+        util.getConfiguration().set("hbase.wal.meta_provider", "filesystem");
+        util.startMiniCluster();
+        try {
+            CallLogDemo.init(util.getConnection());
+            for (TableProfile profile : benchmark.profiles) {
+                benchmark.run(util, profile);
+            }
+            benchmark.writeReport();
+        } finally {
+            util.shutdownMiniCluster();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "--records":
+                    records = Integer.parseInt(value);
+                    break;
+                case "--gets":
+                    gets = Integer.parseInt(value);
+                    break;
+                case "--profiles":
+                    profiles = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        profiles.add(TableProfile.valueOf(name));
+                    }
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数：" + args[i]);
+            }
+        }
+    }
+
+    private void run(HBaseTestingUtility util, TableProfile profile) throws Exception {
+        CallLogDemo.createTable(new String[]{"basic"}, 0, profile);
+        TableName tableName = CallLogDemo.getTable().getName();
+
+        long start = System.nanoTime();
+        CallLogDemo.generateData(users, 2024, 2024, records, 1.0);
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+        // 所有数据落到按该配置写出的HFile里再统计
+        long bytes = compact(util, tableName);
+
+        // 全表扫描，数据块不进缓存
+        Scan scan = new Scan().setCaching(1000).setCacheBlocks(false);
+        List<byte[]> rowkeys = new ArrayList<>();
+        CallLogView view = new CallLogView();
+        start = System.nanoTime();
+        try (ResultScanner scanner = CallLogDemo.getTable().getScanner(scan)) {
+            for (Result result : scanner) {
+                view.wrap(result).getLength();
+                rowkeys.add(result.getRow());
+            }
+        }
+        double scanSeconds = (System.nanoTime() - start) / 1e9;
+
+        Random random = new Random(42);
+        LatencyRecorder latency = new LatencyRecorder();
+        for (int i = 0; i < gets; i++) {
+            Get get = new Get(rowkeys.get(random.nextInt(rowkeys.size())));
+            long begin = System.nanoTime();
+            CallLogDemo.getTable().get(get);
+            latency.record(System.nanoTime() - begin);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("profile", profile.name());
+        result.put("compression", profile.getCompression().getName());
+        result.put("encoding", profile.getEncoding().name());
+        result.put("bloom", profile.getBloomType().name());
+        result.put("blockSize", profile.getBlockSize());
+        result.put("rows", (long) rowkeys.size());
+        result.put("bytesOnDisk", bytes);
+        result.put("bytesPerRow", (double) bytes / Math.max(1, rowkeys.size()));
+        result.put("writeRowsPerSec", rowkeys.size() / writeSeconds);
+        result.put("scanRowsPerSec", rowkeys.size() / scanSeconds);
+        result.put("getP50Micros", latency.percentileMicros(0.5));
+        result.put("getP99Micros", latency.percentileMicros(0.99));
+        results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * 在region server上同步flush并major compaction，每个store合并成一个HFile
+     * Admin.majorCompact只是提交请求，轮询compaction状态可能在compaction开始前就看到NONE；
+     * 被合并掉的HFile要等CompactedHFilesDischarger定期归档才离开表目录，这里直接归档，只统计存活的HFile
+     * @return 存活HFile的总字节数
+     */
+    private static long compact(HBaseTestingUtility util, TableName tableName) throws Exception {
+        long bytes = 0;
+        for (HRegion region : util.getHBaseCluster().getRegions(tableName)) {
+            region.flush(true);
+            for (HStore store : region.getStores()) {
+                // flush可能已经触发了后台compaction，它占用的文件选不进这次compaction，等它结束后重试
+                while (store.getStorefilesCount() > 1) {
+                    region.compact(true);
+                    if (store.getStorefilesCount() > 1) {
+                        Thread.sleep(100);
+                    }
+                }
+                store.closeAndArchiveCompactedFiles();
+                bytes += store.getStorefilesSize();
+            }
+        }
+        return bytes;
+    }
+
+    private void writeReport() throws IOException {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("users", users);
+        config.put("records", records);
+        config.put("gets", gets);
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"timestamp\": ").append(System.currentTimeMillis())
+                .append(",\n  \"config\": ");
+        CallLogBenchmarkRunner.appendObject(json, config);
+        json.append(",\n  \"profiles\": [");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ");
+            CallLogBenchmarkRunner.appendObject(json, results.get(i));
+        }
+        json.append("\n  ]\n}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+        System.out.println("结果已写入" + output);
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 值编码：四列各自Bytes.toBytes 与 一个protobuf单元格
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueEncodingBenchmark {
+    private final String dnum = "19961990012";
+    private final int type = 1;
+    private final int length = 127;
+    private final String date = "2024-03-15 12:30:00";
+
+    @Benchmark
+    public void columns(Blackhole blackhole) {
+        blackhole.consume(Bytes.toBytes(dnum));
+        blackhole.consume(Bytes.toBytes(type));
+        blackhole.consume(Bytes.toBytes(length));
+        blackhole.consume(Bytes.toBytes(date));
+    }
+
+    @Benchmark
+    public byte[] protobuf() {
+        return CallLogOuterClass.CallLog.newBuilder()
+                .setDnum(dnum)
+                .setType(type)
+                .setLength(length)
+                .setDate(date)
+                .build()
+                .toByteArray();
+    }
+}
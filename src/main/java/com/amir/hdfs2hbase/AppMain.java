@@ -1,19 +1,36 @@
 package com.amir.hdfs2hbase;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat2;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.tool.LoadIncrementalHFiles;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.IntSumReducer;
 
 /**
  * hdfs 中的 数据通过MR计算写入HBASE
+ * 默认每个单词一个Put写入wordcount表；参数为 bulkload [HFile输出目录] 时改为写HFile，
+ * 作业成功后一次性导入表中，数据不经过WAL和memstore
  */
 public class AppMain {
+    private static final String TABLE_NAME = "wordcount";
+
     public static void main(String[] args) throws Exception {
-        Configuration conf = new Configuration();
+        Configuration conf = HBaseConfiguration.create();
         // 本地运行
         conf.set("mapreduce.framework.name", "local");
         // 设置hbase运行的zk集群
@@ -22,6 +39,11 @@ public class AppMain {
         System.setProperty("HADOOP_USER_NAME", "root");
         conf.set("mapreduce.cluster.local.dir","/Users/maningyu/workspace/javaprojects/hbaseapi_demo/src/main/resources");
 
+        if (args.length > 0 && "bulkload".equals(args[0])) {
+            Path outputDir = new Path(args.length > 1 ? args[1] : "/tmp/wordcount_hfiles/" + System.currentTimeMillis());
+            System.exit(runBulkLoad(conf, outputDir) ? 0 : 1);
+        }
+
         // 创建job对象
         Job job = Job.getInstance(conf, "hdfs2hbase_wordcount");
         job.setJarByClass(AppMain.class);
@@ -33,10 +55,12 @@ public class AppMain {
         job.setMapperClass(Hdfs2HbaseMapper.class);
         job.setMapOutputKeyClass(Text.class);
         job.setMapOutputValueClass(IntWritable.class);
+        // Mapper内已经聚合过，combiner再合并各次flush和spill中的同一单词
+        job.setCombinerClass(IntSumReducer.class);
 
         // 输出到hbase
         TableMapReduceUtil.initTableReducerJob(
-                "wordcount", // 指定hbase 的表名
+                TABLE_NAME, // 指定hbase 的表名
                 Hdfs2HbaseReducer.class, // 指定hbase的reducer
                 job,
                 null,null,null,null,
@@ -45,4 +69,46 @@ public class AppMain {
         // 提交作业
         job.waitForCompletion(true);
     }
+
+    /**
+     * 批量导入模式
+     * configureIncrementalLoad按表当前的region边界配置TotalOrderPartitioner，reducer数等于region数，
+     * 每个reducer写出一个region的有序HFile，并沿用表的压缩、编码、布隆过滤器和块大小配置。
+     * 作业成功后LoadIncrementalHFiles把HFile原子地挂载到对应region，期间region分裂的话会自动切分文件
+     * @param outputDir HFile的临时目录，导入后删除
+     * @return 是否成功
+     */
+    static boolean runBulkLoad(Configuration conf, Path outputDir) throws Exception {
+        TableName tableName = TableName.valueOf(TABLE_NAME);
+        try (Connection connection = ConnectionFactory.createConnection(conf);
+             Table table = connection.getTable(tableName);
+             RegionLocator regionLocator = connection.getRegionLocator(tableName);
+             Admin admin = connection.getAdmin()) {
+            Job job = Job.getInstance(conf, "hdfs2hbase_wordcount_bulkload");
+            job.setJarByClass(AppMain.class);
+            FileInputFormat.addInputPath(job, new Path("/usr/local/hello.txt"));
+
+            job.setMapperClass(Hdfs2HbaseBulkLoadMapper.class);
+            job.setMapOutputKeyClass(ImmutableBytesWritable.class);
+            job.setMapOutputValueClass(IntWritable.class);
+            job.setCombinerClass(IntSumReducer.class);
+
+            // 设置分区器、reducer数、输出格式，map输出不是Put/Cell时不会替换reducer，之后再指定
+            HFileOutputFormat2.configureIncrementalLoad(job, table, regionLocator);
+            job.setReducerClass(Hdfs2HbaseBulkLoadReducer.class);
+            FileOutputFormat.setOutputPath(job, outputDir);
+            System.out.println("reducer数：" + job.getNumReduceTasks());
+
+            if (!job.waitForCompletion(true)) {
+                return false;
+            }
+            FileSystem fs = outputDir.getFileSystem(conf);
+            try {
+                new LoadIncrementalHFiles(conf).doBulkLoad(outputDir, admin, table, regionLocator);
+            } finally {
+                fs.delete(outputDir, true);
+            }
+            return true;
+        }
+    }
 }
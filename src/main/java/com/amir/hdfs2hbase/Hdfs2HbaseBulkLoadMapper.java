@@ -0,0 +1,41 @@
+package com.amir.hdfs2hbase;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+
+/**
+ * 批量导入模式的Mapper，与Hdfs2HbaseMapper相同，只是以ImmutableBytesWritable作为输出key，
+ * HFileOutputFormat2配置的TotalOrderPartitioner按这个key和region边界分区
+ */
+public class Hdfs2HbaseBulkLoadMapper extends Mapper<LongWritable, Text, ImmutableBytesWritable, IntWritable> {
+    private ImmutableBytesWritable outKey = new ImmutableBytesWritable();
+    private IntWritable outValue = new IntWritable();
+    private WordCountBuffer buffer;
+    private WordCountBuffer.Consumer emitter;
+
+    @Override
+    protected void setup(Mapper<LongWritable, Text, ImmutableBytesWritable, IntWritable>.Context context) {
+        buffer = Hdfs2HbaseMapper.createBuffer(context.getConfiguration());
+        emitter = (word, offset, length, count) -> {
+            // 序列化时会复制，这里可以直接引用缓存中的字节
+            outKey.set(word, offset, length);
+            outValue.set(count);
+            context.write(outKey, outValue);
+        };
+    }
+
+    @Override
+    protected void map(LongWritable key, Text value, Mapper<LongWritable, Text, ImmutableBytesWritable, IntWritable>.Context context) throws IOException, InterruptedException {
+        buffer.addLine(value.getBytes(), value.getLength(), emitter);
+    }
+
+    @Override
+    protected void cleanup(Mapper<LongWritable, Text, ImmutableBytesWritable, IntWritable>.Context context) throws IOException, InterruptedException {
+        buffer.flush(emitter);
+    }
+}
@@ -0,0 +1,32 @@
+package com.amir.hdfs2hbase;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+/**
+ * 批量导入模式的Reducer，输出写入HFile的单元格，与Hdfs2HbaseReducer写入的cf:count相同
+ * 每个reducer对应一个region，key已按字节序排好，每个单词只有一个单元格，可以直接按顺序写入HFile
+ */
+public class Hdfs2HbaseBulkLoadReducer extends Reducer<ImmutableBytesWritable, IntWritable, ImmutableBytesWritable, Cell> {
+    private static final byte[] FAMILY = Bytes.toBytes("cf");
+    private static final byte[] QUALIFIER = Bytes.toBytes("count");
+
+    @Override
+    protected void reduce(ImmutableBytesWritable key, Iterable<IntWritable> values, Reducer<ImmutableBytesWritable, IntWritable, ImmutableBytesWritable, Cell>.Context context) throws IOException, InterruptedException {
+        int sum = 0;
+        for (IntWritable value : values) {
+            sum += value.get();
+        }
+        // key的字节在下一次迭代时会被覆盖，KeyValue构造时会复制
+        KeyValue cell = new KeyValue(key.get(), key.getOffset(), key.getLength(),
+                FAMILY, 0, FAMILY.length, QUALIFIER, 0, QUALIFIER.length,
+                System.currentTimeMillis(), KeyValue.Type.Put, Bytes.toBytes(sum), 0, 4);
+        context.write(key, cell);
+    }
+}
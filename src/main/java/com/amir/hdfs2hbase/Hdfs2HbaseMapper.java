@@ -1,5 +1,6 @@
 package com.amir.hdfs2hbase;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
@@ -7,20 +8,46 @@ import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
 
+/**
+ * 单词计数的Mapper
+ * 直接在Text的字节上按空格切分，不创建String；计数先在WordCountBuffer中聚合，
+ * 缓存满了或map结束时才输出(单词, 次数)，每个单词每次flush只输出一条
+ */
 public class Hdfs2HbaseMapper extends Mapper<LongWritable, Text, Text, IntWritable> {
+    // 最多缓存的不同单词数
+    public static final String MAX_WORDS = "hdfs2hbase.mapper.max.words";
+    // 最多缓存的单词字节数
+    public static final String MAX_BYTES = "hdfs2hbase.mapper.max.bytes";
+
     // 定义输出的key和value
     private Text outKey = new Text();
-    private IntWritable outValue = new IntWritable(1);
+    private IntWritable outValue = new IntWritable();
+    private WordCountBuffer buffer;
+    private WordCountBuffer.Consumer emitter;
+
+    static WordCountBuffer createBuffer(Configuration conf) {
+        return new WordCountBuffer(conf.getInt(MAX_WORDS, 100000), conf.getInt(MAX_BYTES, 8 * 1024 * 1024));
+    }
+
     @Override
-    protected void map(LongWritable key, Text value, Mapper<LongWritable, Text, Text, IntWritable>.Context context) throws IOException, InterruptedException {
-        // 将读取到的内容按照空格进行拆分
-        String[] words = value.toString().split(" ");
-        // 遍历words
-        for (String word : words) {
-            // 输出
-            outKey.set(word);
+    protected void setup(Mapper<LongWritable, Text, Text, IntWritable>.Context context) {
+        buffer = createBuffer(context.getConfiguration());
+        emitter = (word, offset, length, count) -> {
+            outKey.set(word, offset, length);
+            outValue.set(count);
             // 输出到圆形缓冲区
             context.write(outKey, outValue);
-        }
+        };
+    }
+
+    @Override
+    protected void map(LongWritable key, Text value, Mapper<LongWritable, Text, Text, IntWritable>.Context context) throws IOException, InterruptedException {
+        // 将读取到的内容按照空格进行拆分
+        buffer.addLine(value.getBytes(), value.getLength(), emitter);
+    }
+
+    @Override
+    protected void cleanup(Mapper<LongWritable, Text, Text, IntWritable>.Context context) throws IOException, InterruptedException {
+        buffer.flush(emitter);
     }
 }
@@ -0,0 +1,135 @@
+package com.amir.hdfs2hbase;
+
+import org.apache.hadoop.io.WritableComparator;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mapper内聚合单词计数的有界哈希表
+ * 单词的字节直接复制进一块连续的byte数组，计数存在int数组里，开放寻址、线性探测，
+ * 加一个已有单词不分配任何对象。单词数或字节数达到上限时由调用方flush后清空
+ */
+class WordCountBuffer {
+
+    /**
+     * flush时逐个接收单词和计数，word只在回调期间有效
+     */
+    interface Consumer {
+        void accept(byte[] word, int offset, int length, int count) throws IOException, InterruptedException;
+    }
+
+    private final int maxWords;
+    private final int maxBytes;
+    // 槽位里存单词序号+1，0表示空
+    private final int[] slots;
+    private final int mask;
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] hashes;
+    private final int[] counts;
+    private byte[] arena;
+    private int arenaSize;
+    private int size;
+
+    /**
+     * @param maxWords 最多缓存的不同单词数
+     * @param maxBytes 最多缓存的单词字节数
+     */
+    WordCountBuffer(int maxWords, int maxBytes) {
+        this.maxWords = maxWords;
+        this.maxBytes = maxBytes;
+        // 负载因子不超过0.5
+        int capacity = Integer.highestOneBit(Math.max(2, maxWords) - 1) << 2;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.offsets = new int[maxWords];
+        this.lengths = new int[maxWords];
+        this.hashes = new int[maxWords];
+        this.counts = new int[maxWords];
+        this.arena = new byte[Math.min(maxBytes, 64 * 1024)];
+    }
+
+    /**
+     * 按空格切分一行并计数，连续的空格不产生空单词；缓存满时先把已有计数交给onFull再清空
+     */
+    void addLine(byte[] bytes, int length, Consumer onFull) throws IOException, InterruptedException {
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || bytes[i] == ' ') {
+                if (i > start) {
+                    if (isFull(i - start)) {
+                        flush(onFull);
+                    }
+                    add(bytes, start, i - start, 1);
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * 是否需要flush后才能保证下一个长度为length的单词能放下
+     */
+    boolean isFull(int length) {
+        return size == maxWords || (arenaSize + length > maxBytes && size > 0);
+    }
+
+    /**
+     * 单词计数加count，调用前须确认!isFull(length)
+     */
+    void add(byte[] bytes, int offset, int length, int count) {
+        int hash = WritableComparator.hashBytes(bytes, offset, length);
+        int slot = mix(hash) & mask;
+        int entry;
+        while ((entry = slots[slot]) != 0) {
+            int index = entry - 1;
+            if (hashes[index] == hash && lengths[index] == length
+                    && WritableComparator.compareBytes(arena, offsets[index], length, bytes, offset, length) == 0) {
+                counts[index] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ensureArena(length);
+        System.arraycopy(bytes, offset, arena, arenaSize, length);
+        offsets[size] = arenaSize;
+        lengths[size] = length;
+        hashes[size] = hash;
+        counts[size] = count;
+        arenaSize += length;
+        slots[slot] = ++size;
+    }
+
+    private void ensureArena(int length) {
+        if (arenaSize + length > arena.length) {
+            // 单个超长单词允许超过maxBytes
+            int newLength = Math.max(arenaSize + length, Math.min(maxBytes, arena.length * 2));
+            byte[] grown = new byte[newLength];
+            System.arraycopy(arena, 0, grown, 0, arenaSize);
+            arena = grown;
+        }
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 按插入顺序输出所有单词后清空
+     */
+    void flush(Consumer consumer) throws IOException, InterruptedException {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(arena, offsets[i], lengths[i], counts[i]);
+        }
+        Arrays.fill(slots, 0);
+        size = 0;
+        arenaSize = 0;
+    }
+}
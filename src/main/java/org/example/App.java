@@ -4,6 +4,9 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.example.metrics.MetricsFileReporter;
+import org.example.metrics.MetricsRegistry;
+import org.example.metrics.OperationMetrics;
 
 import java.io.IOException;
 
@@ -11,51 +14,160 @@ import java.io.IOException;
  * Hello world!
  *
  */
-public class App 
+public class App implements AutoCloseable
 {
-    private static Connection connection;
-    static {
-        Configuration configuration = HBaseConfiguration.create();
-        //设置Zookeeper集群
-        configuration.set("hbase.zookeeper.quorum","node2,node3,node4");
+    // 进程内共享的连接，首次使用时创建
+    private static volatile Connection sharedConnection;
+
+    private final Connection connection;
+    // 缓存的Table和RegionLocator
+    private final TablePool tablePool;
+    // getData前面的行缓存：最多10万行，60秒过期
+    private final RowCache rowCache;
+    // 每个操作的延迟、吞吐、字节数和失败次数
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private Admin admin;
+
+    /**
+     * 使用进程内共享的连接
+     */
+    public App() throws IOException {
+        this(getSharedConnection());
+    }
+
+    /**
+     * 使用调用方的连接，close()不会关闭该连接
+     */
+    public App(Connection connection) {
+        this.connection = connection;
+        // 每张表最多保留16个空闲的Table
+        this.tablePool = new TablePool(connection, 16);
+        this.rowCache = new RowCache((tableName, gets) -> withTable(tableName, "multiGet", 0, table -> table.get(gets)),
+                100000, 60000);
+    }
+
+    /**
+     * 双重检查加锁，多个线程同时首次调用时只创建一个连接
+     */
+    public static Connection getSharedConnection() throws IOException {
+        Connection connection = sharedConnection;
+        if (connection == null) {
+            synchronized (App.class) {
+                connection = sharedConnection;
+                if (connection == null) {
+                    Configuration configuration = HBaseConfiguration.create();
+                    //设置Zookeeper集群
+                    configuration.set("hbase.zookeeper.quorum","node2,node3,node4");
+                    connection = ConnectionFactory.createConnection(configuration);
+                    sharedConnection = connection;
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * 进程退出前关闭共享连接，之后再调用getSharedConnection会重新创建
+     */
+    public static void closeSharedConnection() throws IOException {
+        synchronized (App.class) {
+            if (sharedConnection != null) {
+                sharedConnection.close();
+                sharedConnection = null;
+            }
+        }
+    }
+
+    /**
+     * 借用一个Table执行操作，完成后归还到池中
+     */
+    private <T> T withTable(TableName tableName, TableAction<T> action) throws IOException {
+        Table table = tablePool.borrow(tableName);
         try {
-            connection = ConnectionFactory.createConnection(configuration);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return action.apply(table);
+        } finally {
+            tablePool.release(table);
+        }
+    }
+
+    /**
+     * 同withTable，同时记录该操作的指标
+     * @param operation 指标中的操作名
+     * @param bytesSent 发送的字节数，返回Result或Result[]时按单元格大小计入接收字节数
+     */
+    private <T> T withTable(TableName tableName, String operation, long bytesSent, TableAction<T> action)
+            throws IOException {
+        OperationMetrics operationMetrics = metrics.get(tableName.getNameAsString(), operation);
+        long start = System.nanoTime();
+        try {
+            T result = withTable(tableName, action);
+            operationMetrics.recordSuccess(start, bytesSent, sizeOf(result));
+            return result;
+        } catch (IOException | RuntimeException e) {
+            operationMetrics.recordFailure(start);
+            throw e;
+        }
+    }
+
+    private static long sizeOf(Object result) {
+        if (result instanceof Result) {
+            return OperationMetrics.sizeOf((Result) result);
+        }
+        long size = 0;
+        if (result instanceof Result[]) {
+            for (Result row : (Result[]) result) {
+                size += OperationMetrics.sizeOf(row);
+            }
         }
+        return size;
+    }
+
+    private interface TableAction<T> {
+        T apply(Table table) throws IOException;
+    }
+
+    /**
+     * Admin只创建一次，在close()中关闭
+     */
+    private synchronized Admin getAdmin() throws IOException {
+        if (admin == null) {
+            admin = connection.getAdmin();
+        }
+        return admin;
+    }
+
+    /**
+     * 表的region位置，缓存在TablePool中
+     */
+    public RegionLocator getRegionLocator(String tableName) throws IOException {
+        return tablePool.getRegionLocator(TableName.valueOf(tableName));
     }
 
     /**
      * 创建命名空间
      */
-    public static void createNamespace(String namespace) throws IOException {
-        // 获取admin对象，用于创建命名空间或者对表操作
-        Admin admin = connection.getAdmin();
+    public void createNamespace(String namespace) throws IOException {
         // 创建命名空间描述器对象
         NamespaceDescriptor namespaceDescriptor = NamespaceDescriptor.create(namespace).build();
         // 创建命名空间
-        admin.createNamespace(namespaceDescriptor);
-        admin.close();
+        getAdmin().createNamespace(namespaceDescriptor);
     }
 
     /**
      * 删除命名空间
      */
-    public static void deleteNamespace(String namespace) throws IOException {
-        // 获取admin对象，用于创建命名空间或者对表操作
-        Admin admin = connection.getAdmin();
+    public void deleteNamespace(String namespace) throws IOException {
         // 删除命名空间
-        admin.deleteNamespace(namespace);
-        admin.close();
+        getAdmin().deleteNamespace(namespace);
     }
 
     /**
      * 判断表是否存在
      */
-    public static boolean tableExists(String tableName) throws IOException {
-        try (Admin admin = connection.getAdmin()) {
+    public boolean tableExists(String tableName) throws IOException {
+        try {
             TableName table = TableName.valueOf(tableName);
-            return admin.tableExists(table);
+            return getAdmin().tableExists(table);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -65,37 +177,48 @@ public class App
     /**
      * 创建表
      */
-    public static void createTable(String tableName, String[] columnFamilies) throws IOException {
-        try(Admin admin=connection.getAdmin()){
-            TableName table = TableName.valueOf(tableName);
-            // 判断表是否存在
-            if (tableExists(tableName)) {
-                System.out.println("表已存在");
-                return;
-            }
-            // 列族有效性校验
-            if (columnFamilies.length == 0) {
-                System.out.println("列族不能为空");
-                return;
-            }
-            // 创建表描述器
-            TableDescriptorBuilder tableDescriptorBuilder = TableDescriptorBuilder.newBuilder(table);
-            for (String columnFamily : columnFamilies) {
-                // 创建列族描述器
-                ColumnFamilyDescriptor columnFamilyDescriptor =
-                        ColumnFamilyDescriptorBuilder.newBuilder(columnFamily.getBytes()).build();
-                // 将列族描述器添加到表描述器
-                tableDescriptorBuilder.setColumnFamily(columnFamilyDescriptor);
-            }
-            admin.createTable(tableDescriptorBuilder.build());
+    public void createTable(String tableName, String[] columnFamilies) throws IOException {
+        createTable(tableName, columnFamilies, TableProfile.DEFAULT);
+    }
+
+    /**
+     * 按预设的压缩、编码、布隆过滤器和块大小创建表
+     */
+    public void createTable(String tableName, String[] columnFamilies, TableProfile profile) throws IOException {
+        TableName table = TableName.valueOf(tableName);
+        // 判断表是否存在
+        if (tableExists(tableName)) {
+            System.out.println("表已存在");
+            return;
+        }
+        // 列族有效性校验
+        if (columnFamilies.length == 0) {
+            System.out.println("列族不能为空");
+            return;
         }
+        // 创建表描述器
+        TableDescriptorBuilder tableDescriptorBuilder = TableDescriptorBuilder.newBuilder(table);
+        for (String columnFamily : columnFamilies) {
+            // 创建列族描述器
+            ColumnFamilyDescriptor columnFamilyDescriptor = profile.newFamily(columnFamily.getBytes());
+            // 将列族描述器添加到表描述器
+            tableDescriptorBuilder.setColumnFamily(columnFamilyDescriptor);
+        }
+        getAdmin().createTable(tableDescriptorBuilder.build());
+    }
+
+    /**
+     * 在线修改已有表的存储配置，已有数据在major compaction后按新配置重写
+     */
+    public void applyProfile(String tableName, TableProfile profile) throws IOException {
+        profile.applyTo(getAdmin(), TableName.valueOf(tableName), false);
     }
 
     /**
      * 删除表
      */
-    public static void deleteTable(String tableName) throws IOException {
-        try(Admin admin=connection.getAdmin()){
+    public void deleteTable(String tableName) throws IOException {
+        try{
             TableName table = TableName.valueOf(tableName);
             // 判断表是否存在
             if (!tableExists(tableName)) {
@@ -103,8 +226,8 @@ public class App
                 return;
             }
             // 删除表 删除之前先禁用
-            admin.disableTable(table);
-            admin.deleteTable(table);
+            getAdmin().disableTable(table);
+            getAdmin().deleteTable(table);
         } catch (IOException e) {
             System.out.println("删除表失败");
         }
@@ -119,13 +242,18 @@ public class App
      *                  column 列
      *                  value 值
      */
-    public static void putData(String tableName, String rowKey, String columnFamily, String column, String value) throws IOException {
-        try(Table table=connection.getTable(TableName.valueOf(tableName))){
+    public void putData(String tableName, String rowKey, String columnFamily, String column, String value) throws IOException {
+        try{
             Put put = new Put(rowKey.getBytes());
             put.addColumn(columnFamily.getBytes(), column.getBytes(), value.getBytes());
-            table.put(put);
+            TableName name = TableName.valueOf(tableName);
+            withTable(name, "put", OperationMetrics.sizeOf(put), table -> {
+                table.put(put);
+                return null;
+            });
+            rowCache.invalidate(name, put.getRow());
         } catch (IOException e) {
-            System.out.println("添加数据失败");
+            System.out.println("添加数据失败：" + e.getMessage());
         }
     }
 
@@ -135,20 +263,42 @@ public class App
      * @param rowKey
      * @throws IOException
      */
-    public static void getData(String tableName, String rowKey) throws IOException {
-        try(Table table=connection.getTable(TableName.valueOf(tableName))){
-            Get get = new Get(rowKey.getBytes());
-            Result result = table.get(get);
-            for (Cell cell : result.rawCells()) {
-                System.out.println(Bytes.toString(CellUtil.cloneRow(cell)));
-                System.out.println(Bytes.toString(CellUtil.cloneFamily(cell)));
-                System.out.println(Bytes.toString(CellUtil.cloneQualifier(cell)));
-                System.out.println(Bytes.toString(CellUtil.cloneValue(cell)));
+    public void getData(String tableName, String rowKey) throws IOException {
+        Result result = get(tableName, rowKey);
+        for (Cell cell : result.rawCells()) {
+            System.out.println(Bytes.toString(CellUtil.cloneRow(cell)));
+            System.out.println(Bytes.toString(CellUtil.cloneFamily(cell)));
+            System.out.println(Bytes.toString(CellUtil.cloneQualifier(cell)));
+            System.out.println(Bytes.toString(CellUtil.cloneValue(cell)));
 
-            }
         }
     }
 
+    /**
+     * 经过行缓存读取一行，并发的未命中会合并成一次multi-get
+     * @return 行不存在时返回空的Result
+     */
+    public Result get(String tableName, String rowKey) throws IOException {
+        // 包含缓存命中，实际的RPC记录在multiGet中
+        OperationMetrics operationMetrics = metrics.get(tableName, "get");
+        long start = System.nanoTime();
+        try {
+            Result result = rowCache.get(TableName.valueOf(tableName), rowKey.getBytes());
+            operationMetrics.recordSuccess(start, 0, 0);
+            return result;
+        } catch (IOException e) {
+            operationMetrics.recordFailure(start);
+            throw e;
+        }
+    }
+
+    /**
+     * 行缓存的命中、未命中、合并次数
+     */
+    public RowCache getRowCache() {
+        return rowCache;
+    }
+
     /**
      * 扫描数据
      * @param tableName
@@ -156,43 +306,85 @@ public class App
      * @param stopRowKey 结束rowKey 不包含
      * @throws IOException
      */
-    public static void scanData(String tableName,String startRowKey,String stopRowKey) throws IOException {
+    public void scanData(String tableName,String startRowKey,String stopRowKey) throws IOException {
+        // 延迟包含遍历scanner的全部时间，接收字节数在遍历时累加
+        OperationMetrics operationMetrics = metrics.get(tableName, "scan");
+        long start = System.nanoTime();
         try {
-            Table table = connection.getTable(TableName.valueOf(tableName));
-            Scan scan = new Scan(startRowKey.getBytes(), stopRowKey.getBytes());
-            ResultScanner scanner = table.getScanner(scan);
-            for (Result result : scanner) {
-                for (Cell cell : result.rawCells()) {
-                    System.out.println(Bytes.toString(CellUtil.cloneRow(cell)));
-                    System.out.println(Bytes.toString(CellUtil.cloneFamily(cell)));
-                    System.out.println(Bytes.toString(CellUtil.cloneQualifier(cell)));
+            Scan scan = new Scan().withStartRow(startRowKey.getBytes()).withStopRow(stopRowKey.getBytes());
+            long bytesReceived = withTable(TableName.valueOf(tableName), table -> {
+                long size = 0;
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    for (Result result : scanner) {
+                        size += OperationMetrics.sizeOf(result);
+                        for (Cell cell : result.rawCells()) {
+                            System.out.println(Bytes.toString(CellUtil.cloneRow(cell)));
+                            System.out.println(Bytes.toString(CellUtil.cloneFamily(cell)));
+                            System.out.println(Bytes.toString(CellUtil.cloneQualifier(cell)));
+                        }
+                    }
                 }
-            }
+                return size;
+            });
+            operationMetrics.recordSuccess(start, 0, bytesReceived);
         }catch (IOException e){
-            System.out.println("扫描数据失败");
+            operationMetrics.recordFailure(start);
+            System.out.println("扫描数据失败：" + e.getMessage());
         }
     }
 
-    public static void deleteRow(String tableName, String rowKey) throws IOException {
-        try(Table table=connection.getTable(TableName.valueOf(tableName))){
-            Delete delete = new Delete(rowKey.getBytes());
-            table.delete(delete);
-        }
+    public void deleteRow(String tableName, String rowKey) throws IOException {
+        delete(TableName.valueOf(tableName), new Delete(rowKey.getBytes()));
     }
 
     /**
      * 删除数据列族下的指定列的数据
      * @throws IOException
      */
-    public static void deleteData(String tableName, String rowKey, String columnFamily, String column) throws IOException {
-        try(Table table=connection.getTable(TableName.valueOf(tableName))){
-            Delete delete = new Delete(rowKey.getBytes());
-            delete.addColumn(columnFamily.getBytes(), column.getBytes());
+    public void deleteData(String tableName, String rowKey, String columnFamily, String column) throws IOException {
+        Delete delete = new Delete(rowKey.getBytes());
+        delete.addColumn(columnFamily.getBytes(), column.getBytes());
+        delete(TableName.valueOf(tableName), delete);
+    }
+
+    private void delete(TableName tableName, Delete delete) throws IOException {
+        withTable(tableName, "delete", OperationMetrics.sizeOf(delete), table -> {
             table.delete(delete);
+            return null;
+        });
+        rowCache.invalidate(tableName, delete.getRow());
+    }
+
+    /**
+     * 关闭行缓存、缓存的Table、RegionLocator和Admin，不关闭连接
+     */
+    @Override
+    public void close() throws IOException {
+        rowCache.close();
+        try {
+            tablePool.close();
+        } finally {
+            synchronized (this) {
+                if (admin != null) {
+                    admin.close();
+                    admin = null;
+                }
+            }
         }
     }
 
     public static void main( String[] args ) throws IOException {
+        // 指标同时暴露到JMX并每10秒写入本地CSV
+        MetricsRegistry.getDefault().enableJmx();
+        try (MetricsFileReporter reporter = new MetricsFileReporter(MetricsRegistry.getDefault(), "hbase-metrics.csv").start(10);
+             App app = new App()) {
+            app.run();
+        } finally {
+            closeSharedConnection();
+        }
+    }
+
+    private void run() throws IOException {
         System.out.println(connection);
         // 创建命名空间
         try {
@@ -234,6 +426,8 @@ public class App
 
         try {
             getData("test1", "row1");
+            getData("test1", "row1");
+            System.out.println("行缓存 " + getRowCache());
         } catch (IOException e) {
             System.out.println("查询数据失败");
         }
@@ -0,0 +1,164 @@
+package org.example;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * App的异步版本，基于AsyncConnection/AsyncTable
+ * 所有操作立即返回CompletableFuture，不占用调用线程等待RPC，
+ * 少量线程即可同时保持成千上万个请求在途。回调在HBase的RPC线程上执行，不能在回调里做阻塞操作
+ */
+public class AsyncApp implements AutoCloseable {
+    // 进程内共享的连接，首次使用时创建
+    private static volatile CompletableFuture<AsyncConnection> sharedConnection;
+
+    private final AsyncConnection connection;
+    // AsyncTable线程安全，每张表只创建一个
+    private final ConcurrentHashMap<TableName, AsyncTable<AdvancedScanResultConsumer>> tables =
+            new ConcurrentHashMap<>();
+
+    public AsyncApp(AsyncConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * 使用进程内共享的连接
+     */
+    public static CompletableFuture<AsyncApp> create() {
+        return getSharedConnection().thenApply(AsyncApp::new);
+    }
+
+    public static CompletableFuture<AsyncConnection> getSharedConnection() {
+        CompletableFuture<AsyncConnection> connection = sharedConnection;
+        if (connection == null) {
+            synchronized (AsyncApp.class) {
+                connection = sharedConnection;
+                if (connection == null) {
+                    Configuration configuration = HBaseConfiguration.create();
+                    //设置Zookeeper集群
+                    configuration.set("hbase.zookeeper.quorum","node2,node3,node4");
+                    connection = ConnectionFactory.createAsyncConnection(configuration);
+                    sharedConnection = connection;
+                }
+            }
+        }
+        return connection;
+    }
+
+    public static void closeSharedConnection() throws IOException {
+        synchronized (AsyncApp.class) {
+            if (sharedConnection != null) {
+                sharedConnection.join().close();
+                sharedConnection = null;
+            }
+        }
+    }
+
+    private AsyncTable<AdvancedScanResultConsumer> getTable(String tableName) {
+        return tables.computeIfAbsent(TableName.valueOf(tableName), connection::getTable);
+    }
+
+    /**
+     * 添加数据
+     */
+    public CompletableFuture<Void> putData(String tableName, String rowKey, String columnFamily, String column, String value) {
+        Put put = new Put(rowKey.getBytes());
+        put.addColumn(columnFamily.getBytes(), column.getBytes(), value.getBytes());
+        return getTable(tableName).put(put);
+    }
+
+    /**
+     * 查询数据，行不存在时返回空的Result
+     */
+    public CompletableFuture<Result> getData(String tableName, String rowKey) {
+        return getTable(tableName).get(new Get(rowKey.getBytes()));
+    }
+
+    public CompletableFuture<Void> deleteRow(String tableName, String rowKey) {
+        return getTable(tableName).delete(new Delete(rowKey.getBytes()));
+    }
+
+    /**
+     * 删除数据列族下的指定列的数据
+     */
+    public CompletableFuture<Void> deleteData(String tableName, String rowKey, String columnFamily, String column) {
+        Delete delete = new Delete(rowKey.getBytes());
+        delete.addColumn(columnFamily.getBytes(), column.getBytes());
+        return getTable(tableName).delete(delete);
+    }
+
+    /**
+     * 批量执行Put、Get、Delete等操作，结果与actions一一对应（Get返回Result，其余返回null）
+     */
+    public <T> CompletableFuture<List<T>> batch(String tableName, List<? extends Row> actions) {
+        return getTable(tableName).batchAll(actions);
+    }
+
+    /**
+     * 异步扫描，每行交给handler异步处理
+     * 处理中的行达到maxInFlight时暂停从region server拉取，handler跟不上时不会把结果堆在内存里
+     * @return 全部行处理完成后完成，值为行数；scan或任一handler失败时异常完成
+     */
+    public CompletableFuture<Long> scan(String tableName, Scan scan,
+                                       Function<Result, CompletableFuture<?>> handler, int maxInFlight) {
+        FlowControlledScanConsumer consumer = new FlowControlledScanConsumer(handler, maxInFlight);
+        getTable(tableName).scan(scan, consumer);
+        return consumer.getFuture();
+    }
+
+    /**
+     * 扫描数据
+     * @param startRowKey 起始rowKey 包含
+     * @param stopRowKey 结束rowKey 不包含
+     */
+    public CompletableFuture<Long> scanData(String tableName, String startRowKey, String stopRowKey) {
+        Scan scan = new Scan().withStartRow(startRowKey.getBytes()).withStopRow(stopRowKey.getBytes());
+        return scan(tableName, scan, result -> {
+            for (Cell cell : result.rawCells()) {
+                System.out.println(Bytes.toString(CellUtil.cloneRow(cell)) + ","
+                        + Bytes.toString(CellUtil.cloneFamily(cell)) + ":"
+                        + Bytes.toString(CellUtil.cloneQualifier(cell)));
+            }
+            return CompletableFuture.completedFuture(null);
+        }, 1000);
+    }
+
+    /**
+     * 不关闭连接，共享连接用closeSharedConnection关闭
+     */
+    @Override
+    public void close() {
+        tables.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        try (AsyncApp app = create().join()) {
+            // 1000个put同时在途，全部完成后再读
+            List<CompletableFuture<Void>> puts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                puts.add(app.putData("test1", "row" + i, "cf1", "name", "user" + i));
+            }
+            CompletableFuture.allOf(puts.toArray(new CompletableFuture[0]))
+                    .thenCompose(v -> app.getData("test1", "row1"))
+                    .thenAccept(result -> System.out.println(result))
+                    .thenCompose(v -> app.scanData("test1", "row1", "row2"))
+                    .thenAccept(rows -> System.out.println("扫描" + rows + "行"))
+                    .thenCompose(v -> app.deleteData("test1", "row1", "cf1", "name"))
+                    .join();
+        } finally {
+            closeSharedConnection();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.example;
+
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 带流量控制的异步scan消费者
+ * 每行交给异步的handler处理，处理中的行达到maxInFlight时暂停scan（ScanController.suspend），
+ * 不再向region server拉取下一批；处理中的行降到一半以下时再恢复。
+ * onNext在RPC线程上回调，这里只登记和分发，从不阻塞
+ */
+public class FlowControlledScanConsumer implements AdvancedScanResultConsumer {
+    private final Function<Result, CompletableFuture<?>> handler;
+    private final int maxInFlight;
+    // scan结束且所有行处理完后完成，值为行数
+    private final CompletableFuture<Long> done = new CompletableFuture<>();
+
+    // 以下字段由this保护
+    private int inFlight;
+    private long rows;
+    private ScanResumer resumer;
+    private boolean scanFinished;
+    private Throwable error;
+
+    public FlowControlledScanConsumer(Function<Result, CompletableFuture<?>> handler, int maxInFlight) {
+        this.handler = handler;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public CompletableFuture<Long> getFuture() {
+        return done;
+    }
+
+    @Override
+    public void onNext(Result[] results, ScanController controller) {
+        synchronized (this) {
+            if (error != null) {
+                // handler失败后不再继续拉取
+                controller.terminate();
+                return;
+            }
+            inFlight += results.length;
+            rows += results.length;
+        }
+        for (Result result : results) {
+            CompletableFuture<?> future;
+            try {
+                future = handler.apply(result);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((v, e) -> onRowDone(e));
+        }
+        synchronized (this) {
+            if (inFlight >= maxInFlight && error == null) {
+                resumer = controller.suspend();
+            }
+        }
+    }
+
+    private void onRowDone(Throwable e) {
+        ScanResumer toResume = null;
+        synchronized (this) {
+            inFlight--;
+            if (e != null && error == null) {
+                error = e;
+            }
+            // 出错时也要恢复，下一次onNext会终止scan
+            if (resumer != null && (inFlight <= maxInFlight / 2 || error != null)) {
+                toResume = resumer;
+                resumer = null;
+            }
+        }
+        if (toResume != null) {
+            toResume.resume();
+        }
+        maybeComplete();
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        synchronized (this) {
+            if (error == null) {
+                error = e;
+            }
+            scanFinished = true;
+        }
+        maybeComplete();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            scanFinished = true;
+        }
+        maybeComplete();
+    }
+
+    private void maybeComplete() {
+        Throwable failure;
+        long total;
+        synchronized (this) {
+            if (!scanFinished || inFlight > 0) {
+                return;
+            }
+            failure = error;
+            total = rows;
+        }
+        if (failure != null) {
+            done.completeExceptionally(failure);
+        } else {
+            done.complete(total);
+        }
+    }
+}
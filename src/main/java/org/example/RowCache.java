@@ -0,0 +1,286 @@
+package org.example;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的行缓存
+ * 按LRU淘汰，最多缓存maxEntries行，每行缓存ttlMillis毫秒后过期。
+ * 未命中时：同一rowkey的并发请求只发一次RPC，其余请求等待同一个结果（合并）；
+ * 不同rowkey的并发请求由后台线程攒成一次multi-get，上一批RPC进行期间到达的请求都会进入下一批。
+ * 写入和删除后需要调用invalidate，否则最多读到ttl之前的旧数据
+ */
+public class RowCache implements AutoCloseable {
+    // 一次multi-get的最大行数
+    private static final int MAX_BATCH = 100;
+
+    /**
+     * 批量读取，返回的结果与gets一一对应
+     */
+    public interface Loader {
+        Result[] load(TableName tableName, List<Get> gets) throws IOException;
+    }
+
+    private final Loader loader;
+    private final int maxEntries;
+    private final long ttlNanos;
+    // accessOrder=true，最近访问的在队尾
+    private final LinkedHashMap<Key, Entry> entries;
+    // 正在加载的行
+    private final ConcurrentHashMap<Key, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    private final Thread batcher;
+    private volatile boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RowCache(Loader loader, int maxEntries, long ttlMillis) {
+        this.loader = loader;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > RowCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.batcher = new Thread(this::runBatches, "row-cache-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * 读取一行，行不存在时返回空的Result（同样会被缓存）
+     */
+    public Result get(TableName tableName, byte[] row) throws IOException {
+        Key key = new Key(tableName, row);
+        Result cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        if (closed) {
+            throw new IOException("缓存已关闭");
+        }
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CompletableFuture<Result> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            future = existing;
+        } else {
+            misses.increment();
+            Pending request = new Pending(key, future);
+            pending.add(request);
+            // 与close并发时，后台线程可能已经退出
+            if (closed && pending.remove(request)) {
+                inFlight.remove(key, future);
+                future.completeExceptionally(new IOException("缓存已关闭"));
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待读取结果时被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 行被修改或删除后调用，正在加载的旧结果也不会再写入缓存
+     */
+    public void invalidate(TableName tableName, byte[] row) {
+        Key key = new Key(tableName, row);
+        synchronized (entries) {
+            inFlight.remove(key);
+            entries.remove(key);
+        }
+    }
+
+    private Result lookup(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAt > ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result;
+        }
+    }
+
+    /**
+     * 后台线程：取出当前所有等待中的请求，按表分组后各发一次multi-get
+     */
+    private void runBatches() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            Map<TableName, List<Pending>> byTable = new HashMap<>();
+            for (Pending request : batch) {
+                byTable.computeIfAbsent(request.key.tableName, t -> new ArrayList<>()).add(request);
+            }
+            for (Map.Entry<TableName, List<Pending>> entry : byTable.entrySet()) {
+                load(entry.getKey(), entry.getValue());
+            }
+            batch.clear();
+        }
+        // 关闭后还没处理的请求直接失败
+        IOException closedException = new IOException("缓存已关闭");
+        pending.drainTo(batch);
+        for (Pending request : batch) {
+            inFlight.remove(request.key, request.future);
+            request.future.completeExceptionally(closedException);
+        }
+    }
+
+    private void load(TableName tableName, List<Pending> requests) {
+        List<Get> gets = new ArrayList<>(requests.size());
+        for (Pending request : requests) {
+            gets.add(new Get(request.key.row));
+        }
+        Result[] results;
+        try {
+            results = loader.load(tableName, gets);
+            batches.increment();
+        } catch (IOException | RuntimeException e) {
+            for (Pending request : requests) {
+                inFlight.remove(request.key, request.future);
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            Pending request = requests.get(i);
+            synchronized (entries) {
+                // 加载期间被invalidate时映射已不在，结果不进缓存，但等待者仍拿到这次读取的结果
+                if (inFlight.remove(request.key, request.future)) {
+                    entries.put(request.key, new Entry(results[i], now));
+                }
+            }
+            request.future.complete(results[i]);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 与进行中的加载合并、没有单独发RPC的请求数
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * multi-get的次数
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        batcher.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "hits:" + getHits() + ",misses:" + getMisses() + ",coalesced:" + getCoalesced()
+                + ",batches:" + getBatches() + ",evictions:" + getEvictions() + ",size:" + size();
+    }
+
+    private static final class Key {
+        private final TableName tableName;
+        private final byte[] row;
+        private final int hash;
+
+        Key(TableName tableName, byte[] row) {
+            this.tableName = tableName;
+            // 复制一份，调用方之后复用或修改自己的数组不会破坏缓存项
+            this.row = Bytes.copy(row);
+            this.hash = 31 * tableName.hashCode() + Arrays.hashCode(row);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tableName.equals(other.tableName) && Arrays.equals(row, other.row);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Pending {
+        private final Key key;
+        private final CompletableFuture<Result> future;
+
+        Pending(Key key, CompletableFuture<Result> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+
+    private static final class Entry {
+        private final Result result;
+        private final long loadedAt;
+
+        Entry(Result result, long loadedAt) {
+            this.result = result;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
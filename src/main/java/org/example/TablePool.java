@@ -0,0 +1,104 @@
+package org.example;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 按表缓存Table和RegionLocator
+ * Table不是线程安全的，所以每个线程借出一个、用完归还，空闲的Table留在池中复用，
+ * 每张表最多保留maxIdlePerTable个，多余的直接关闭。RegionLocator线程安全，每张表只创建一个
+ */
+public class TablePool implements AutoCloseable {
+    private final Connection connection;
+    private final int maxIdlePerTable;
+    private final ConcurrentHashMap<TableName, Queue<Table>> idleTables = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TableName, RegionLocator> locators = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public TablePool(Connection connection, int maxIdlePerTable) {
+        this.connection = connection;
+        this.maxIdlePerTable = maxIdlePerTable;
+    }
+
+    /**
+     * 借出一个Table，用完必须调用release归还
+     */
+    public Table borrow(TableName tableName) throws IOException {
+        if (closed) {
+            throw new IOException("TablePool已关闭");
+        }
+        Table table = idle(tableName).poll();
+        return table != null ? table : connection.getTable(tableName);
+    }
+
+    /**
+     * 归还Table，池满或已关闭时直接关闭
+     */
+    public void release(Table table) throws IOException {
+        Queue<Table> idle = idle(table.getName());
+        // 队列大小只是近似值，偶尔多留一两个不影响
+        if (closed || idle.size() >= maxIdlePerTable) {
+            table.close();
+            return;
+        }
+        idle.offer(table);
+        if (closed && idle.remove(table)) {
+            table.close();
+        }
+    }
+
+    public RegionLocator getRegionLocator(TableName tableName) throws IOException {
+        RegionLocator locator = locators.get(tableName);
+        if (locator != null) {
+            return locator;
+        }
+        RegionLocator created = connection.getRegionLocator(tableName);
+        locator = locators.putIfAbsent(tableName, created);
+        if (locator != null) {
+            created.close();
+            return locator;
+        }
+        return created;
+    }
+
+    private Queue<Table> idle(TableName tableName) {
+        return idleTables.computeIfAbsent(tableName, t -> new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * 关闭池中空闲的Table和所有RegionLocator，不关闭Connection
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (Queue<Table> idle : idleTables.values()) {
+            Table table;
+            while ((table = idle.poll()) != null) {
+                try {
+                    table.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        for (RegionLocator locator : locators.values()) {
+            try {
+                locator.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        locators.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.CompressionTest;
+
+import java.io.IOException;
+
+/**
+ * 列族存储配置的预设：压缩、数据块编码、布隆过滤器、块大小
+ * 压缩按优先顺序选第一个本机可用的编解码器（SNAPPY、LZ4、ZSTD需要hadoop native库），都不可用时不压缩。
+ * region server与客户端需要安装相同的native库，否则region打不开
+ */
+public enum TableProfile {
+    /**
+     * 全部使用默认值
+     */
+    DEFAULT(new Compression.Algorithm[]{Compression.Algorithm.NONE}, DataBlockEncoding.NONE, BloomType.ROW, 64 * 1024),
+    /**
+     * 写多读少的通话记录：压缩快的编解码器，FAST_DIFF利用相邻rowkey的公共前缀
+     */
+    WRITE_HEAVY_CDR(new Compression.Algorithm[]{Compression.Algorithm.SNAPPY, Compression.Algorithm.LZ4, Compression.Algorithm.GZ},
+            DataBlockEncoding.FAST_DIFF, BloomType.ROW, 64 * 1024),
+    /**
+     * 点查为主：小块减少每次get读取的数据量，ROW_INDEX_V1在块内二分查找不用顺序解码，ROW布隆过滤器跳过不含该行的HFile
+     */
+    READ_HEAVY_LOOKUP(new Compression.Algorithm[]{Compression.Algorithm.SNAPPY, Compression.Algorithm.LZ4, Compression.Algorithm.NONE},
+            DataBlockEncoding.ROW_INDEX_V1, BloomType.ROW, 16 * 1024),
+    /**
+     * 冷数据归档：压缩率高的编解码器、大块，只做扫描所以不建布隆过滤器
+     */
+    ARCHIVAL(new Compression.Algorithm[]{Compression.Algorithm.ZSTD, Compression.Algorithm.GZ},
+            DataBlockEncoding.FAST_DIFF, BloomType.NONE, 256 * 1024);
+
+    private final Compression.Algorithm[] compressions;
+    private final DataBlockEncoding encoding;
+    private final BloomType bloomType;
+    private final int blockSize;
+    // 第一次使用时检测
+    private volatile Compression.Algorithm compression;
+
+    TableProfile(Compression.Algorithm[] compressions, DataBlockEncoding encoding, BloomType bloomType, int blockSize) {
+        this.compressions = compressions;
+        this.encoding = encoding;
+        this.bloomType = bloomType;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * 本机可用的压缩算法
+     */
+    public Compression.Algorithm getCompression() {
+        Compression.Algorithm selected = compression;
+        if (selected == null) {
+            selected = Compression.Algorithm.NONE;
+            for (Compression.Algorithm candidate : compressions) {
+                try {
+                    CompressionTest.testCompression(candidate);
+                    selected = candidate;
+                    break;
+                } catch (IOException e) {
+                    System.out.println(candidate.getName() + "不可用：" + e.getMessage());
+                }
+            }
+            compression = selected;
+        }
+        return selected;
+    }
+
+    public DataBlockEncoding getEncoding() {
+        return encoding;
+    }
+
+    public BloomType getBloomType() {
+        return bloomType;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 在已有列族配置上应用预设，其余属性（版本数、TTL等）保持不变
+     */
+    public ColumnFamilyDescriptor apply(ColumnFamilyDescriptor family) {
+        return ColumnFamilyDescriptorBuilder.newBuilder(family)
+                .setCompressionType(getCompression())
+                .setDataBlockEncoding(encoding)
+                .setBloomFilterType(bloomType)
+                .setBlocksize(blockSize)
+                .build();
+    }
+
+    public ColumnFamilyDescriptor newFamily(byte[] family) {
+        return apply(ColumnFamilyDescriptorBuilder.of(family));
+    }
+
+    /**
+     * 在线修改表的所有列族，表不需要禁用，各region依次重新打开
+     * 新配置只影响之后写出的HFile，已有文件在下一次major compaction时按新配置重写
+     * @param compactNow 是否立即发起major compaction（异步）
+     */
+    public void applyTo(Admin admin, TableName tableName, boolean compactNow) throws IOException {
+        TableDescriptor descriptor = admin.getDescriptor(tableName);
+        TableDescriptorBuilder builder = TableDescriptorBuilder.newBuilder(descriptor);
+        for (ColumnFamilyDescriptor family : descriptor.getColumnFamilies()) {
+            builder.modifyColumnFamily(apply(family));
+        }
+        admin.modifyTable(builder.build());
+        if (compactNow) {
+            admin.majorCompact(tableName);
+        }
+    }
+}
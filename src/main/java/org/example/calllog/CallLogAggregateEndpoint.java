@@ -0,0 +1,199 @@
+package org.example.calllog;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import com.google.protobuf.RpcCallback;
+import com.google.protobuf.RpcController;
+import com.google.protobuf.Service;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 通话时长聚合的Endpoint协处理器
+ * 在每个region内扫描rowkey范围，按呼叫类型计算 条数、总时长、最短、最长 和时长直方图，
+ * 只把几百字节的聚合结果返回客户端，由CallLogAggregationClient合并各region的部分结果。
+ * 同时支持按列存储（basic:type、basic:length）和protobuf存储（basic:dnum）两种布局
+ * 部署：把本项目的jar放到region server的classpath，或通过CallLogDemo.enableAggregation()指定jar路径挂到表上。
+ * 服务直接实现protobuf的Service接口，消息格式见CallLogAggregateProtocol，可以运行在region server的protobuf 2.5上
+ */
+public class CallLogAggregateEndpoint implements RegionCoprocessor, Service {
+    private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+    private static final byte[] LENGTH = CallLogQuery.Field.LENGTH.getQualifier();
+    private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+
+    private RegionCoprocessorEnvironment env;
+
+    @Override
+    public void start(CoprocessorEnvironment env) throws IOException {
+        if (env instanceof RegionCoprocessorEnvironment) {
+            this.env = (RegionCoprocessorEnvironment) env;
+        } else {
+            throw new CoprocessorException("只能加载到表上");
+        }
+    }
+
+    @Override
+    public Iterable<Service> getServices() {
+        return Collections.singleton(this);
+    }
+
+    @Override
+    public Descriptors.ServiceDescriptor getDescriptorForType() {
+        return CallLogAggregateProtocol.SERVICE;
+    }
+
+    @Override
+    public Message getRequestPrototype(Descriptors.MethodDescriptor method) {
+        return DynamicMessage.getDefaultInstance(CallLogAggregateProtocol.REQUEST);
+    }
+
+    @Override
+    public Message getResponsePrototype(Descriptors.MethodDescriptor method) {
+        return DynamicMessage.getDefaultInstance(CallLogAggregateProtocol.RESPONSE);
+    }
+
+    @Override
+    public void callMethod(Descriptors.MethodDescriptor method, RpcController controller, Message request,
+                           RpcCallback<Message> done) {
+        if (!CallLogAggregateProtocol.AGGREGATE.getName().equals(method.getName())) {
+            controller.setFailed("未知的方法：" + method.getFullName());
+            done.run(null);
+            return;
+        }
+        aggregate(controller, request, done);
+    }
+
+    private void aggregate(RpcController controller, Message request, RpcCallback<Message> done) {
+        Scan scan = new Scan();
+        scan.addFamily(CallLogRecord.FAMILY);
+        byte[] startRow = CallLogAggregateProtocol.getStartRow(request);
+        if (startRow.length > 0) {
+            scan.withStartRow(startRow);
+        }
+        byte[] stopRow = CallLogAggregateProtocol.getStopRow(request);
+        if (stopRow.length > 0) {
+            scan.withStopRow(stopRow);
+        }
+        try {
+            // 单元格时间戳为通话时间的表按时间范围跳过HFile，默认范围不限制
+            scan.setTimeRange(CallLogAggregateProtocol.getMinTimestamp(request),
+                    CallLogAggregateProtocol.getMaxTimestamp(request));
+        } catch (IOException e) {
+            CoprocessorRpcUtils.setControllerException(controller, e);
+            done.run(null);
+            return;
+        }
+        int[] bounds = CallLogAggregateProtocol.getHistogramBounds(request);
+
+        Message response = null;
+        Map<Integer, Accumulator> accumulators = new TreeMap<>();
+        CallLogProtobufView view = new CallLogProtobufView();
+        List<Cell> cells = new ArrayList<>();
+        try (RegionScanner scanner = env.getRegion().getScanner(scan)) {
+            boolean hasMore;
+            do {
+                cells.clear();
+                hasMore = scanner.next(cells);
+                if (!cells.isEmpty()) {
+                    accumulate(cells, view, bounds, accumulators);
+                }
+            } while (hasMore);
+            List<Message> stats = new ArrayList<>(accumulators.size());
+            for (Map.Entry<Integer, Accumulator> entry : accumulators.entrySet()) {
+                stats.add(entry.getValue().toStats(entry.getKey()));
+            }
+            response = CallLogAggregateProtocol.newResponse(stats);
+        } catch (IOException e) {
+            CoprocessorRpcUtils.setControllerException(controller, e);
+        }
+        done.run(response);
+    }
+
+    /**
+     * 一行记录计入所属类型，按列存储时直接读type、length列，否则解码protobuf单元格
+     */
+    private static void accumulate(List<Cell> cells, CallLogProtobufView view, int[] bounds,
+                                   Map<Integer, Accumulator> accumulators) throws IOException {
+        Cell typeCell = null;
+        Cell lengthCell = null;
+        Cell dnumCell = null;
+        for (Cell cell : cells) {
+            if (CellUtil.matchingQualifier(cell, TYPE)) {
+                typeCell = cell;
+            } else if (CellUtil.matchingQualifier(cell, LENGTH)) {
+                lengthCell = cell;
+            } else if (CellUtil.matchingQualifier(cell, DNUM)) {
+                dnumCell = cell;
+            }
+        }
+        int type;
+        int length;
+        if (typeCell != null && lengthCell != null) {
+            type = Bytes.toInt(typeCell.getValueArray(), typeCell.getValueOffset(), typeCell.getValueLength());
+            length = Bytes.toInt(lengthCell.getValueArray(), lengthCell.getValueOffset(), lengthCell.getValueLength());
+        } else if (dnumCell != null && typeCell == null) {
+            view.wrap(dnumCell);
+            type = view.getType();
+            length = view.getLength();
+        } else {
+            // 字段不全的行（例如被deleteRowCell删掉了length列）不参与统计
+            return;
+        }
+        Accumulator accumulator = accumulators.get(type);
+        if (accumulator == null) {
+            accumulator = new Accumulator(bounds);
+            accumulators.put(type, accumulator);
+        }
+        accumulator.add(length);
+    }
+
+    /**
+     * 直方图的桶：第一个上界不小于length的桶，超过所有上界的放在最后一个桶
+     */
+    static int bucketOf(int[] bounds, int length) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (length <= bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    private static class Accumulator {
+        private final int[] bounds;
+        private final long[] histogram;
+        private long count;
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+
+        Accumulator(int[] bounds) {
+            this.bounds = bounds;
+            this.histogram = new long[bounds.length + 1];
+        }
+
+        void add(int length) {
+            count++;
+            sum += length;
+            min = Math.min(min, length);
+            max = Math.max(max, length);
+            histogram[bucketOf(bounds, length)]++;
+        }
+
+        Message toStats(int type) {
+            return CallLogAggregateProtocol.newStats(type, count, sum, min, max, histogram);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.example.calllog;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.MethodDescriptorProto;
+import com.google.protobuf.DescriptorProtos.ServiceDescriptorProto;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+
+import java.util.List;
+
+/**
+ * CallLogAggregateEndpoint的RPC协议
+ * HBase 2.0的region server用自带的未shade的protobuf 2.5运行协处理器服务，CoprocessorClassLoader总是从父加载器加载
+ * com.google.protobuf，protoc 3.x生成的代码（继承GeneratedMessageV3）在region server上无法链接。
+ * 所以这里不使用生成的代码，而是在运行时构造描述符，用DynamicMessage读写消息，只用到protobuf 2.5和3.x都有的API。
+ * 等价的proto定义：
+ * <pre>
+ * package com.amir.hbase.util;
+ *
+ * // 在region内对rowkey范围[start_row, stop_row)内的通话记录做聚合
+ * message CallLogAggregateRequest {
+ *   optional bytes start_row = 1;
+ *   optional bytes stop_row = 2;
+ *   // 通话时长直方图的桶上界（包含），最后一个桶收集大于最大上界的记录
+ *   repeated int32 histogram_bounds = 3;
+ *   // 单元格时间戳范围[min_timestamp, max_timestamp)，默认不限制
+ *   optional int64 min_timestamp = 4 [default = 0];
+ *   optional int64 max_timestamp = 5 [default = 9223372036854775807];
+ * }
+ *
+ * // 某一呼叫类型的聚合结果
+ * message CallTypeStats {
+ *   optional int32 type = 1;
+ *   optional int64 count = 2;
+ *   optional int64 sum = 3;
+ *   optional int32 min = 4;
+ *   optional int32 max = 5;
+ *   repeated int64 histogram = 6;
+ * }
+ *
+ * message CallLogAggregateResponse {
+ *   repeated CallTypeStats stats = 1;
+ * }
+ *
+ * service CallLogAggregateService {
+ *   rpc aggregate(CallLogAggregateRequest) returns (CallLogAggregateResponse);
+ * }
+ * </pre>
+ */
+final class CallLogAggregateProtocol {
+    private static final String PACKAGE = "com.amir.hbase.util";
+
+    static final Descriptors.Descriptor REQUEST;
+    static final Descriptors.Descriptor CALL_TYPE_STATS;
+    static final Descriptors.Descriptor RESPONSE;
+    static final Descriptors.ServiceDescriptor SERVICE;
+    static final Descriptors.MethodDescriptor AGGREGATE;
+
+    private static final Descriptors.FieldDescriptor START_ROW;
+    private static final Descriptors.FieldDescriptor STOP_ROW;
+    private static final Descriptors.FieldDescriptor HISTOGRAM_BOUNDS;
+    private static final Descriptors.FieldDescriptor MIN_TIMESTAMP;
+    private static final Descriptors.FieldDescriptor MAX_TIMESTAMP;
+    private static final Descriptors.FieldDescriptor TYPE;
+    private static final Descriptors.FieldDescriptor COUNT;
+    private static final Descriptors.FieldDescriptor SUM;
+    private static final Descriptors.FieldDescriptor MIN;
+    private static final Descriptors.FieldDescriptor MAX;
+    private static final Descriptors.FieldDescriptor HISTOGRAM;
+    private static final Descriptors.FieldDescriptor STATS;
+
+    static {
+        FileDescriptorProto file = FileDescriptorProto.newBuilder()
+                .setName("CallLogAggregate.proto")
+                .setPackage(PACKAGE)
+                .addMessageType(DescriptorProto.newBuilder()
+                        .setName("CallLogAggregateRequest")
+                        .addField(field("start_row", 1, FieldDescriptorProto.Type.TYPE_BYTES, false))
+                        .addField(field("stop_row", 2, FieldDescriptorProto.Type.TYPE_BYTES, false))
+                        .addField(field("histogram_bounds", 3, FieldDescriptorProto.Type.TYPE_INT32, true))
+                        .addField(field("min_timestamp", 4, FieldDescriptorProto.Type.TYPE_INT64, false)
+                                .setDefaultValue("0"))
+                        .addField(field("max_timestamp", 5, FieldDescriptorProto.Type.TYPE_INT64, false)
+                                .setDefaultValue(String.valueOf(Long.MAX_VALUE))))
+                .addMessageType(DescriptorProto.newBuilder()
+                        .setName("CallTypeStats")
+                        .addField(field("type", 1, FieldDescriptorProto.Type.TYPE_INT32, false))
+                        .addField(field("count", 2, FieldDescriptorProto.Type.TYPE_INT64, false))
+                        .addField(field("sum", 3, FieldDescriptorProto.Type.TYPE_INT64, false))
+                        .addField(field("min", 4, FieldDescriptorProto.Type.TYPE_INT32, false))
+                        .addField(field("max", 5, FieldDescriptorProto.Type.TYPE_INT32, false))
+                        .addField(field("histogram", 6, FieldDescriptorProto.Type.TYPE_INT64, true)))
+                .addMessageType(DescriptorProto.newBuilder()
+                        .setName("CallLogAggregateResponse")
+                        .addField(field("stats", 1, FieldDescriptorProto.Type.TYPE_MESSAGE, true)
+                                .setTypeName("." + PACKAGE + ".CallTypeStats")))
+                .addService(ServiceDescriptorProto.newBuilder()
+                        .setName("CallLogAggregateService")
+                        .addMethod(MethodDescriptorProto.newBuilder()
+                                .setName("aggregate")
+                                .setInputType("." + PACKAGE + ".CallLogAggregateRequest")
+                                .setOutputType("." + PACKAGE + ".CallLogAggregateResponse")))
+                .build();
+        Descriptors.FileDescriptor descriptor;
+        try {
+            descriptor = Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0]);
+        } catch (Descriptors.DescriptorValidationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        REQUEST = descriptor.findMessageTypeByName("CallLogAggregateRequest");
+        CALL_TYPE_STATS = descriptor.findMessageTypeByName("CallTypeStats");
+        RESPONSE = descriptor.findMessageTypeByName("CallLogAggregateResponse");
+        SERVICE = descriptor.findServiceByName("CallLogAggregateService");
+        AGGREGATE = SERVICE.findMethodByName("aggregate");
+        START_ROW = REQUEST.findFieldByName("start_row");
+        STOP_ROW = REQUEST.findFieldByName("stop_row");
+        HISTOGRAM_BOUNDS = REQUEST.findFieldByName("histogram_bounds");
+        MIN_TIMESTAMP = REQUEST.findFieldByName("min_timestamp");
+        MAX_TIMESTAMP = REQUEST.findFieldByName("max_timestamp");
+        TYPE = CALL_TYPE_STATS.findFieldByName("type");
+        COUNT = CALL_TYPE_STATS.findFieldByName("count");
+        SUM = CALL_TYPE_STATS.findFieldByName("sum");
+        MIN = CALL_TYPE_STATS.findFieldByName("min");
+        MAX = CALL_TYPE_STATS.findFieldByName("max");
+        HISTOGRAM = CALL_TYPE_STATS.findFieldByName("histogram");
+        STATS = RESPONSE.findFieldByName("stats");
+    }
+
+    private CallLogAggregateProtocol() {
+    }
+
+    private static FieldDescriptorProto.Builder field(String name, int number, FieldDescriptorProto.Type type,
+                                                      boolean repeated) {
+        return FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setType(type)
+                .setLabel(repeated ? FieldDescriptorProto.Label.LABEL_REPEATED : FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    }
+
+    static Message newRequest(byte[] startRow, byte[] stopRow, long minTimestamp, long maxTimestamp, int[] bounds) {
+        Message.Builder builder = DynamicMessage.newBuilder(REQUEST)
+                .setField(START_ROW, ByteString.copyFrom(startRow))
+                .setField(STOP_ROW, ByteString.copyFrom(stopRow))
+                .setField(MIN_TIMESTAMP, minTimestamp)
+                .setField(MAX_TIMESTAMP, maxTimestamp);
+        for (int bound : bounds) {
+            builder.addRepeatedField(HISTOGRAM_BOUNDS, bound);
+        }
+        return builder.build();
+    }
+
+    static byte[] getStartRow(Message request) {
+        return ((ByteString) request.getField(START_ROW)).toByteArray();
+    }
+
+    static byte[] getStopRow(Message request) {
+        return ((ByteString) request.getField(STOP_ROW)).toByteArray();
+    }
+
+    static long getMinTimestamp(Message request) {
+        return (Long) request.getField(MIN_TIMESTAMP);
+    }
+
+    static long getMaxTimestamp(Message request) {
+        return (Long) request.getField(MAX_TIMESTAMP);
+    }
+
+    static int[] getHistogramBounds(Message request) {
+        int[] bounds = new int[request.getRepeatedFieldCount(HISTOGRAM_BOUNDS)];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = (Integer) request.getRepeatedField(HISTOGRAM_BOUNDS, i);
+        }
+        return bounds;
+    }
+
+    static Message newStats(int type, long count, long sum, int min, int max, long[] histogram) {
+        Message.Builder builder = DynamicMessage.newBuilder(CALL_TYPE_STATS)
+                .setField(TYPE, type)
+                .setField(COUNT, count)
+                .setField(SUM, sum)
+                .setField(MIN, min)
+                .setField(MAX, max);
+        for (long bucket : histogram) {
+            builder.addRepeatedField(HISTOGRAM, bucket);
+        }
+        return builder.build();
+    }
+
+    static Message newResponse(List<Message> stats) {
+        Message.Builder builder = DynamicMessage.newBuilder(RESPONSE);
+        for (Message message : stats) {
+            builder.addRepeatedField(STATS, message);
+        }
+        return builder.build();
+    }
+
+    static int getStatsCount(Message response) {
+        return response.getRepeatedFieldCount(STATS);
+    }
+
+    static Message getStats(Message response, int index) {
+        return (Message) response.getRepeatedField(STATS, index);
+    }
+
+    static int getType(Message stats) {
+        return (Integer) stats.getField(TYPE);
+    }
+
+    static long getCount(Message stats) {
+        return (Long) stats.getField(COUNT);
+    }
+
+    static long getSum(Message stats) {
+        return (Long) stats.getField(SUM);
+    }
+
+    static int getMin(Message stats) {
+        return (Integer) stats.getField(MIN);
+    }
+
+    static int getMax(Message stats) {
+        return (Integer) stats.getField(MAX);
+    }
+
+    static int getHistogramCount(Message stats) {
+        return stats.getRepeatedFieldCount(HISTOGRAM);
+    }
+
+    static long getHistogram(Message stats, int index) {
+        return (Long) stats.getRepeatedField(HISTOGRAM, index);
+    }
+}
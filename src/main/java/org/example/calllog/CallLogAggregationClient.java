@@ -0,0 +1,194 @@
+package org.example.calllog;
+
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CallLogAggregateEndpoint的客户端
+ * 向rowkey范围覆盖的每个region发起一次聚合RPC，再在客户端合并各region的部分结果
+ */
+public class CallLogAggregationClient {
+    // 默认的通话时长直方图桶上界（秒）
+    public static final int[] DEFAULT_BOUNDS = {30, 60, 120, 180};
+
+    private final Table table;
+    // 表的rowkey加盐方式，为null表示不加盐
+    private final RowKeySalter salter;
+
+    public CallLogAggregationClient(Table table) {
+        this(table, null);
+    }
+
+    /**
+     * @param salter 加盐表的salter，aggregate(Scan, int[])的起止行为未加盐的rowkey，按桶分别聚合
+     */
+    public CallLogAggregationClient(Table table, RowKeySalter salter) {
+        this.table = table;
+        this.salter = salter;
+    }
+
+    /**
+     * 按scan的起止行和时间范围聚合，支持包含结束行的scan（例如CallLogQuery生成的scan）
+     * 加盐表的scan使用未加盐的起止行，对每个桶各发一次请求再合并
+     * scan上的过滤器和列不会传给region，按呼叫类型的过滤可以直接从结果中取对应的类型
+     * @return 呼叫类型 -> 聚合结果
+     */
+    public Map<Integer, Stats> aggregate(Scan scan, int[] bounds) throws IOException {
+        List<Message> responses = new ArrayList<>();
+        for (Message request : newRequests(scan, salter, bounds)) {
+            responses.addAll(call(request));
+        }
+        return merge(responses, bounds);
+    }
+
+    /**
+     * 把scan换算成聚合请求，加盐表每个桶一个请求，起止行加上桶前缀
+     */
+    static List<Message> newRequests(Scan scan, RowKeySalter salter, int[] bounds) throws IOException {
+        List<Scan> scans = salter == null ? Collections.singletonList(scan) : salter.getBucketScans(scan);
+        List<Message> requests = new ArrayList<>(scans.size());
+        for (Scan rangeScan : scans) {
+            byte[] stopRow = rangeScan.getStopRow();
+            if (stopRow.length > 0 && rangeScan.includeStopRow()) {
+                // 包含结束行等价于不包含 结束行+0x00
+                stopRow = Bytes.add(stopRow, new byte[1]);
+            }
+            TimeRange timeRange = rangeScan.getTimeRange();
+            requests.add(CallLogAggregateProtocol.newRequest(rangeScan.getStartRow(), stopRow,
+                    timeRange.getMin(), timeRange.getMax(), bounds));
+        }
+        return requests;
+    }
+
+    /**
+     * 聚合[startRow, stopRow)范围内的通话记录，起止行为表中实际的rowkey
+     */
+    public Map<Integer, Stats> aggregate(byte[] startRow, byte[] stopRow, int[] bounds) throws IOException {
+        return aggregate(startRow, stopRow, 0, Long.MAX_VALUE, bounds);
+    }
+
+    /**
+     * 聚合[startRow, stopRow)范围内、单元格时间戳在[minTimestamp, maxTimestamp)内的通话记录
+     */
+    public Map<Integer, Stats> aggregate(byte[] startRow, byte[] stopRow, long minTimestamp, long maxTimestamp,
+                                         int[] bounds) throws IOException {
+        return merge(call(CallLogAggregateProtocol.newRequest(startRow, stopRow, minTimestamp, maxTimestamp, bounds)),
+                bounds);
+    }
+
+    /**
+     * 对请求范围内的每个region发起一次RPC，响应按描述符解析成DynamicMessage
+     */
+    private Collection<Message> call(Message request) throws IOException {
+        byte[] startRow = CallLogAggregateProtocol.getStartRow(request);
+        byte[] stopRow = CallLogAggregateProtocol.getStopRow(request);
+        try {
+            return table.batchCoprocessorService(CallLogAggregateProtocol.AGGREGATE, request,
+                    startRow.length == 0 ? null : startRow,
+                    stopRow.length == 0 ? null : stopRow,
+                    (Message) DynamicMessage.getDefaultInstance(CallLogAggregateProtocol.RESPONSE)).values();
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException("聚合失败", e);
+        }
+    }
+
+    /**
+     * 合并各region的部分结果，没有数据的region返回空响应
+     */
+    static Map<Integer, Stats> merge(Collection<Message> responses, int[] bounds) {
+        Map<Integer, Stats> merged = new TreeMap<>();
+        for (Message response : responses) {
+            if (response == null) {
+                continue;
+            }
+            for (int i = 0; i < CallLogAggregateProtocol.getStatsCount(response); i++) {
+                Message stats = CallLogAggregateProtocol.getStats(response, i);
+                int type = CallLogAggregateProtocol.getType(stats);
+                Stats total = merged.get(type);
+                if (total == null) {
+                    total = new Stats(bounds);
+                    merged.put(type, total);
+                }
+                total.merge(stats);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 某一呼叫类型的聚合结果
+     */
+    public static class Stats {
+        private final int[] bounds;
+        private final long[] histogram;
+        private long count;
+        private long sum;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+
+        Stats(int[] bounds) {
+            this.bounds = bounds;
+            this.histogram = new long[bounds.length + 1];
+        }
+
+        void merge(Message stats) {
+            count += CallLogAggregateProtocol.getCount(stats);
+            sum += CallLogAggregateProtocol.getSum(stats);
+            min = Math.min(min, CallLogAggregateProtocol.getMin(stats));
+            max = Math.max(max, CallLogAggregateProtocol.getMax(stats));
+            int buckets = CallLogAggregateProtocol.getHistogramCount(stats);
+            for (int i = 0; i < histogram.length && i < buckets; i++) {
+                histogram[i] += CallLogAggregateProtocol.getHistogram(stats, i);
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public int getMin() {
+            return min;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        public double getAverage() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 第i个桶是 (bounds[i-1], bounds[i]]，最后一个桶是 大于bounds[bounds.length-1]
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count:" + count + ",sum:" + sum + ",avg:" + String.format("%.2f", getAverage())
+                    + ",min:" + min + ",max:" + max
+                    + ",histogram" + Arrays.toString(bounds) + ":" + Arrays.toString(histogram);
+        }
+    }
+}
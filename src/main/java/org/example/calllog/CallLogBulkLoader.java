@@ -0,0 +1,171 @@
+package org.example.calllog;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreFileWriter;
+import org.apache.hadoop.hbase.tool.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 通话记录的HFile批量导入
+ * 与HFileOutputFormat2的写法一致：按表的列族配置（压缩、编码、布隆过滤器、块大小）写出有序的HFile，
+ * 再通过LoadIncrementalHFiles一次性挂载到表的region上，数据不经过WAL和memstore
+ * rowkey与单元格布局和CallLogDemo.insertData()/insertProtocolBuffer()完全相同，加盐表每个桶单独写一个HFile
+ */
+public class CallLogBulkLoader {
+    private final Connection connection;
+    private final TableName tableName;
+    // HFile的临时输出目录，导入成功后文件会被移动到表目录下
+    private final Path outputDir;
+    // rowkey加盐，为null表示不加盐
+    private final RowKeySalter salter;
+    // 单元格时间戳使用通话时间，否则使用导入时间
+    private final boolean callTimeTimestamps;
+
+    public CallLogBulkLoader(Connection connection, TableName tableName, Path outputDir) {
+        this(connection, tableName, outputDir, null);
+    }
+
+    public CallLogBulkLoader(Connection connection, TableName tableName, Path outputDir, RowKeySalter salter) {
+        this(connection, tableName, outputDir, salter, false);
+    }
+
+    /**
+     * @param callTimeTimestamps 为true时单元格时间戳为通话时间，HFile元数据中记录的时间范围即通话时间范围
+     */
+    public CallLogBulkLoader(Connection connection, TableName tableName, Path outputDir, RowKeySalter salter,
+                             boolean callTimeTimestamps) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.outputDir = outputDir;
+        this.salter = salter;
+        this.callTimeTimestamps = callTimeTimestamps;
+    }
+
+    /**
+     * 生成数据、写HFile并导入
+     * @param users 用户数
+     * @param rowsPerUser 每个用户的通话记录数
+     * @param protobuf 是否使用protobuf存储格式
+     * @return 导入的记录条数
+     */
+    public long load(int users, int rowsPerUser, boolean protobuf) throws Exception {
+        Configuration conf = connection.getConfiguration();
+        FileSystem fs = outputDir.getFileSystem(conf);
+        long records;
+        try (Table table = connection.getTable(tableName);
+             RegionLocator regionLocator = connection.getRegionLocator(tableName);
+             Admin admin = connection.getAdmin()) {
+            records = writeHFiles(fs, table.getDescriptor(), users, rowsPerUser, protobuf);
+            // 原子地把HFile挂载到对应region，跨region的文件会被自动切分
+            new LoadIncrementalHFiles(conf).doBulkLoad(outputDir, admin, table, regionLocator);
+        } finally {
+            fs.delete(outputDir, true);
+        }
+        return records;
+    }
+
+    /**
+     * 写出HFile，HFile要求单元格严格有序：
+     * 先对用户手机号排序，再对每个用户的记录排序，这样只需要在内存中保留一个用户的数据。
+     * 加盐后同一用户的记录分散在各个桶里，每个桶内仍然按手机号有序，所以按(列族, 桶)分别写文件
+     */
+    private long writeHFiles(FileSystem fs, TableDescriptor descriptor, int users, int rowsPerUser,
+                             boolean protobuf) throws Exception {
+        // 去重并排序，重复的手机号会导致前后两批rowkey交叉
+        TreeSet<String> phoneNumbers = new TreeSet<>();
+        while (phoneNumbers.size() < users) {
+            phoneNumbers.add(CallLogDemo.getPhoneNumber("186"));
+        }
+
+        Map<String, StoreFileWriter> writers = new HashMap<>();
+        Random random = new Random();
+        long now = System.currentTimeMillis();
+        long records = 0;
+        List<Cell> cells = new ArrayList<>(rowsPerUser * 4);
+        try {
+            int i = 0;
+            for (String phoneNumber : phoneNumbers) {
+                System.out.println("rowkey:" + phoneNumber);
+                cells.clear();
+                for (int j = 0; j < rowsPerUser; j++) {
+                    String dnum = CallLogDemo.getPhoneNumber("199");
+                    int length = random.nextInt(200) + 1;
+                    int type = random.nextInt(2);
+                    long callTime = CallLogDemo.getCallTime(2024);
+                    String date = CallLogDemo.sdf.format(callTime);
+                    String rowkey = CallLogDemo.getRowKey(phoneNumber, callTime, i + j);
+                    if (salter != null) {
+                        rowkey = salter.salt(rowkey);
+                    }
+                    Put put = protobuf
+                            ? CallLogDemo.createProtocolBufferPut(rowkey, dnum, type, length, date)
+                            : CallLogDemo.createPut(rowkey, dnum, type, length, date);
+                    // Put中的时间戳是LATEST_TIMESTAMP，写HFile前需要替换成真实时间
+                    long timestamp = callTimeTimestamps ? callTime : now;
+                    for (List<Cell> familyCells : put.getFamilyCellMap().values()) {
+                        for (Cell cell : familyCells) {
+                            cells.add(new KeyValue(CellUtil.cloneRow(cell), CellUtil.cloneFamily(cell),
+                                    CellUtil.cloneQualifier(cell), timestamp, CellUtil.cloneValue(cell)));
+                        }
+                    }
+                    records++;
+                }
+                cells.sort(CellComparator.getInstance());
+                for (Cell cell : cells) {
+                    String family = Bytes.toString(CellUtil.cloneFamily(cell));
+                    String writerKey = salter == null ? family
+                            : family + "/" + salter.bucketOf(salter.unsalt(Bytes.toString(CellUtil.cloneRow(cell))));
+                    StoreFileWriter writer = writers.get(writerKey);
+                    if (writer == null) {
+                        writer = createWriter(fs, descriptor.getColumnFamily(CellUtil.cloneFamily(cell)));
+                        writers.put(writerKey, writer);
+                    }
+                    writer.append(cell);
+                }
+                i++;
+            }
+        } finally {
+            for (StoreFileWriter writer : writers.values()) {
+                writer.appendFileInfo(HStoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(now));
+                writer.appendFileInfo(HStoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+                writer.appendTrackedTimestampsToMetadata();
+                writer.close();
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 按列族配置创建HFile写入器，文件放在 outputDir/列族名 下，这是LoadIncrementalHFiles要求的目录结构
+     */
+    private StoreFileWriter createWriter(FileSystem fs, ColumnFamilyDescriptor family) throws IOException {
+        Configuration conf = connection.getConfiguration();
+        HFileContext context = new HFileContextBuilder()
+                .withCompression(family.getCompressionType())
+                .withDataBlockEncoding(family.getDataBlockEncoding())
+                .withBlockSize(family.getBlocksize())
+                .withIncludesTags(true)
+                .build();
+        return new StoreFileWriter.Builder(conf, new CacheConfig(conf), fs)
+                .withOutputDir(new Path(outputDir, family.getNameAsString()))
+                .withBloomType(family.getBloomFilterType())
+                .withComparator(CellComparator.getInstance())
+                .withFileContext(context)
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 写入时实时维护的每日通话计数
+ * 计数表rowkey为 手机号_yyyyMMdd，c列族下 calls_0/length_0 为呼出次数和时长，calls_1/length_1 为呼入次数和时长（long）。
+ * 一批记录先在内存中按(用户, 天, 类型)合并增量，flush时每个(用户, 天)只发一个Increment，
+ * 1万条记录通常只有几百个Increment。查询某用户当天的累计值只需一次Get
+ * 注意：Increment不是幂等的，客户端重试可能导致重复计数，计数只用于实时展示，准确值以CallLogMonthlyRollupJob为准
+ * 维护计数的写入路径：CallLogDemo的insertData、insertProtocolBuffer、insertDataStreaming和CallLogDirectoryIngest；
+ * CallLogGenerator（生产规模下无法在内存中合并所有(用户, 天)）和HFile批量导入（不经过写路径）不更新计数，
+ * 用这两种方式导入的数据不会反映在计数中
+ * 非线程安全，每个写入线程使用自己的实例
+ */
+public class CallLogCounters {
+    // 计数表名
+    public static final TableName COUNTERS_TABLE = TableName.valueOf("calllog:calllog_counters");
+    public static final byte[] FAMILY = Bytes.toBytes("c");
+    // 按type下标
+    private static final byte[][] CALLS = {Bytes.toBytes("calls_0"), Bytes.toBytes("calls_1")};
+    private static final byte[][] LENGTH = {Bytes.toBytes("length_0"), Bytes.toBytes("length_1")};
+
+    // rowkey -> {calls_0, length_0, calls_1, length_1}
+    private final Map<String, long[]> deltas = new HashMap<>();
+
+    /**
+     * 创建计数表
+     */
+    public static void createCountersTable(Admin admin) throws IOException {
+        if (admin.tableExists(COUNTERS_TABLE)) {
+            System.out.println("计数表已存在");
+            return;
+        }
+        admin.createTable(TableDescriptorBuilder.newBuilder(COUNTERS_TABLE)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+                .build());
+    }
+
+    /**
+     * 计数表rowkey
+     * @param date 通话时间 yyyy-MM-dd HH:mm:ss 或 yyyy-MM-dd
+     */
+    public static String counterRowKey(String phoneNumber, String date) {
+        return phoneNumber + "_" + date.substring(0, 4) + date.substring(5, 7) + date.substring(8, 10);
+    }
+
+    /**
+     * 累加一条通话记录
+     * @param type 0 呼出 1呼入
+     */
+    public void add(String phoneNumber, String date, int type, int length) {
+        long[] delta = deltas.computeIfAbsent(counterRowKey(phoneNumber, date), k -> new long[4]);
+        int index = type == 0 ? 0 : 2;
+        delta[index]++;
+        delta[index + 1] += length;
+    }
+
+    /**
+     * 尚未flush的(用户, 天)数
+     */
+    public int size() {
+        return deltas.size();
+    }
+
+    /**
+     * 合并后的Increment，每个(用户, 天)一个，值为0的列不写
+     */
+    List<Increment> toIncrements() {
+        List<Increment> increments = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, long[]> entry : deltas.entrySet()) {
+            long[] delta = entry.getValue();
+            Increment increment = new Increment(Bytes.toBytes(entry.getKey()));
+            for (int type = 0; type < 2; type++) {
+                if (delta[type * 2] != 0) {
+                    increment.addColumn(FAMILY, CALLS[type], delta[type * 2]);
+                    increment.addColumn(FAMILY, LENGTH[type], delta[type * 2 + 1]);
+                }
+            }
+            // 只需要写入，不需要返回新值
+            increment.setReturnResults(false);
+            increments.add(increment);
+        }
+        return increments;
+    }
+
+    /**
+     * 把合并后的增量批量写入计数表，写入成功的从内存中移除
+     * batch部分失败时抛出异常，失败的增量保留到下次flush重试，已成功的不会再发，避免重复计数
+     */
+    public void flush(Table countersTable) throws IOException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Increment> increments = toIncrements();
+        Object[] results = new Object[increments.size()];
+        try {
+            countersTable.batch(increments, results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("写入计数被中断", e);
+        } finally {
+            // 成功的位置是Result，失败的是异常，没发出去的是null
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] instanceof Result) {
+                    deltas.remove(Bytes.toString(increments.get(i).getRow()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 某用户某天的累计值，一次Get
+     * @param day yyyy-MM-dd
+     * @return {呼出次数, 呼出时长, 呼入次数, 呼入时长}，没有记录时全为0
+     */
+    public static long[] getDailyTotals(Table countersTable, String phoneNumber, String day) throws IOException {
+        Result result = countersTable.get(new Get(Bytes.toBytes(counterRowKey(phoneNumber, day))));
+        long[] totals = new long[4];
+        for (int type = 0; type < 2; type++) {
+            byte[] calls = result.getValue(FAMILY, CALLS[type]);
+            byte[] length = result.getValue(FAMILY, LENGTH[type]);
+            totals[type * 2] = calls == null ? 0 : Bytes.toLong(calls);
+            totals[type * 2 + 1] = length == null ? 0 : Bytes.toLong(length);
+        }
+        return totals;
+    }
+}
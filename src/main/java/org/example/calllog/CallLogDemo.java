@@ -2,18 +2,23 @@ package org.example.calllog;
 
 import com.amir.hbase.util.CallLogOuterClass;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.filter.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.example.FlowControlledScanConsumer;
+import org.example.TableProfile;
+import org.example.metrics.MetricsRegistry;
+import org.example.metrics.OperationMetrics;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 10个用户10年的通话记录分析
@@ -33,18 +38,21 @@ public class CallLogDemo {
     private static Table table;
 
     private static Connection connection;
+    // 异步连接，首次使用时创建
+    private static CompletableFuture<AsyncConnection> asyncConnection;
+    // 表描述器中记录加盐桶数的属性名
+    private static final String SALT_BUCKETS_KEY = "SALT_BUCKETS";
+    // rowkey加盐，为null表示不加盐
+    private static RowKeySalter salter;
+    // 表描述器中标记单元格时间戳为通话时间的属性名
+    private static final String CALL_TIME_TIMESTAMP_KEY = "CALL_TIME_TIMESTAMP";
+    // 单元格时间戳是否为通话时间
+    private static boolean callTimeTimestamps;
+    // dnum索引表，为null表示不维护索引
+    private static Table indexTable;
+    // 每日计数表，为null表示不维护计数
+    private static Table countersTable;
 
-    static {
-        Configuration configuration = HBaseConfiguration.create();
-        configuration.set("hbase.zookeeper.quorum", "node2,node3,node4");
-
-        try {
-            // 连接对象
-            connection = ConnectionFactory.createConnection(configuration);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
 
 
     /**
@@ -52,10 +60,40 @@ public class CallLogDemo {
      * @throws IOException
      */
     public static void init() throws IOException {
+       // 连接在init时才创建，只使用rowkey、Put等工具方法时不需要连接集群
+       if (connection == null) {
+           Configuration configuration = HBaseConfiguration.create();
+           configuration.set("hbase.zookeeper.quorum", "node2,node3,node4");
+           // 连接对象
+           connection = ConnectionFactory.createConnection(configuration);
+       }
+       init(connection);
+    }
+
+    /**
+     * 使用调用方的连接初始化，例如基准测试中的mini cluster
+     */
+    public static void init(Connection externalConnection) throws IOException {
+       connection = externalConnection;
        admin=connection.getAdmin();
        createNamespace();
        tableName=TableName.valueOf(NAMESPACE + ":" + TABLE_NAME);
        table=connection.getTable(tableName);
+       // 加盐表的桶数记录在表描述器中
+       if (admin.tableExists(tableName)) {
+           TableDescriptor descriptor = admin.getDescriptor(tableName);
+           String saltBuckets = descriptor.getValue(SALT_BUCKETS_KEY);
+           salter = saltBuckets == null ? null : new RowKeySalter(Integer.parseInt(saltBuckets));
+           callTimeTimestamps = Boolean.parseBoolean(descriptor.getValue(CALL_TIME_TIMESTAMP_KEY));
+       }
+       // 索引表存在时，写入主表的同时维护索引
+       if (admin.tableExists(CallLogDnumIndex.INDEX_TABLE)) {
+           indexTable = connection.getTable(CallLogDnumIndex.INDEX_TABLE);
+       }
+       // 计数表存在时，每批写入后合并更新每日计数
+       if (admin.tableExists(CallLogCounters.COUNTERS_TABLE)) {
+           countersTable = connection.getTable(CallLogCounters.COUNTERS_TABLE);
+       }
     }
 
     /**
@@ -65,9 +103,18 @@ public class CallLogDemo {
         if (table != null) {
             table.close();
         }
+        if (indexTable != null) {
+            indexTable.close();
+        }
+        if (countersTable != null) {
+            countersTable.close();
+        }
         if (admin != null) {
             admin.close();
         }
+        if (asyncConnection != null) {
+            asyncConnection.join().close();
+        }
         if (connection != null) {
             connection.close();
         }
@@ -83,24 +130,59 @@ public class CallLogDemo {
             if (NAMESPACE.equals(namespaceDescriptor.getName())) {
                 System.out.println("命名空间已存在");
                 return;
-            }else {
-                NamespaceDescriptor newNamespaceDescriptor = NamespaceDescriptor.create(NAMESPACE).build();
-                admin.createNamespace(newNamespaceDescriptor);
-                System.out.println("创建命名空间成功");
             }
         }
+        // 遍历完所有命名空间都不匹配才创建
+        NamespaceDescriptor newNamespaceDescriptor = NamespaceDescriptor.create(NAMESPACE).build();
+        admin.createNamespace(newNamespaceDescriptor);
+        System.out.println("创建命名空间成功");
     }
 
     /**
      * 创建表
      */
     public static void createTable(String[]columnFamilies) throws IOException {
+        createTable(columnFamilies, 0);
+    }
+
+    /**
+     * 创建加盐预分区的表
+     * @param saltBuckets 加盐桶数，表按桶边界预分区为saltBuckets个region，0表示不加盐单region
+     */
+    public static void createTable(String[]columnFamilies, int saltBuckets) throws IOException {
+        createTable(columnFamilies, saltBuckets, TableProfile.DEFAULT);
+    }
+
+    /**
+     * 按预设的压缩、编码、布隆过滤器和块大小创建表
+     */
+    public static void createTable(String[]columnFamilies, int saltBuckets, TableProfile profile) throws IOException {
+        createTable(columnFamilies, saltBuckets, profile, false);
+    }
+
+    /**
+     * 创建单元格时间戳为通话时间的表
+     * 每个HFile的元数据中记录了其中单元格的最小、最大时间戳，按时间段查询时设置Scan.setTimeRange，
+     * region server直接跳过时间范围不相交的HFile。通话记录大体按时间顺序写入，查询最近几个月时旧的HFile都不用读。
+     * 注意：TTL按单元格时间戳计算，即按通话时间过期；重发同一条记录时间戳相同，直接覆盖；
+     * 不带时间戳的Delete会屏蔽之后补写的、通话时间早于删除时刻的记录，直到major compaction
+     * @param callTimeTimestamps 为true时写入的单元格时间戳为通话时间，否则为写入时间
+     */
+    public static void createTable(String[]columnFamilies, int saltBuckets, TableProfile profile,
+                                   boolean callTimeTimestamps) throws IOException {
         String tableFullName = NAMESPACE + ":" + TABLE_NAME;
         TableDescriptorBuilder tableDescriptorBuilder = TableDescriptorBuilder.newBuilder(TableName.valueOf(tableFullName));
         // 列族描述器
         for (String columnFamily : columnFamilies) {
-            ColumnFamilyDescriptorBuilder columnFamilyDescriptorBuilder = ColumnFamilyDescriptorBuilder.newBuilder(columnFamily.getBytes());
-            tableDescriptorBuilder.setColumnFamily(columnFamilyDescriptorBuilder.build());
+            tableDescriptorBuilder.setColumnFamily(profile.newFamily(columnFamily.getBytes()));
+        }
+        RowKeySalter newSalter = null;
+        if (saltBuckets > 0) {
+            newSalter = new RowKeySalter(saltBuckets);
+            tableDescriptorBuilder.setValue(SALT_BUCKETS_KEY, String.valueOf(saltBuckets));
+        }
+        if (callTimeTimestamps) {
+            tableDescriptorBuilder.setValue(CALL_TIME_TIMESTAMP_KEY, "true");
         }
 
         TableDescriptor tableDescriptor = tableDescriptorBuilder.build();
@@ -113,7 +195,52 @@ public class CallLogDemo {
 
         System.out.println("进行到这一步了");
         // 创建表
-        admin.createTable(tableDescriptorBuilder.build());
+        if (newSalter != null && saltBuckets > 1) {
+            admin.createTable(tableDescriptor, newSalter.getSplitKeys());
+        } else {
+            admin.createTable(tableDescriptor);
+        }
+        salter = newSalter;
+        CallLogDemo.callTimeTimestamps = callTimeTimestamps;
+    }
+
+    static Table getTable() {
+        return table;
+    }
+
+    /**
+     * 加盐表返回加盐后的rowkey，否则原样返回
+     */
+    static String saltRowKey(String rowkey) {
+        return salter == null ? rowkey : salter.salt(rowkey);
+    }
+
+    static byte[] saltRowKey(byte[] rowkey) {
+        return salter == null ? rowkey : salter.salt(rowkey);
+    }
+
+    /**
+     * 写入单元格使用的时间戳：通话时间，或LATEST_TIMESTAMP由region server填入写入时间
+     */
+    static long cellTimestamp(long callTime) {
+        return callTimeTimestamps ? callTime : HConstants.LATEST_TIMESTAMP;
+    }
+
+    /**
+     * 单元格时间戳为通话时间的表，只读取通话时间在 [from, to) 内的单元格，跳过时间范围不相交的HFile
+     */
+    static Scan setCallTimeRange(Scan scan, long from, long to) throws IOException {
+        if (callTimeTimestamps) {
+            scan.setTimeRange(from, to);
+        }
+        return scan;
+    }
+
+    /**
+     * 加盐表对每个桶各发起一个scan并按原rowkey归并，scan的起止行使用未加盐的rowkey
+     */
+    static ResultScanner getScanner(Scan scan) throws IOException {
+        return salter == null ? table.getScanner(scan) : salter.getScanner(table, scan);
     }
 
     /**
@@ -123,9 +250,13 @@ public class CallLogDemo {
     public static void insertData() throws Exception {
         Random random = new Random();
         List<Put> puts = new ArrayList<>();
+        List<Put> indexPuts = new ArrayList<>();
+        CallLogCounters counters = new CallLogCounters();
+        long start = System.nanoTime();
         for (int i = 0; i < 10; i++) {
             // 清理表格
             puts.clear();
+            indexPuts.clear();
             // 生成rowkey 手机号码
             String phoneNumber = getPhoneNumber("186");
             System.out.println("rowkey:" + phoneNumber);
@@ -133,33 +264,186 @@ public class CallLogDemo {
                 String dnum = getPhoneNumber("199");
                 int length = random.nextInt(200) + 1;
                 int type = random.nextInt(2);
-                String date = getDate(2024);
-                // rowKey的设计
-                String rowkey = phoneNumber + "_" + (Long.MAX_VALUE - sdf.parse(date).getTime() + i +j);
-                Put put = new Put(rowkey.getBytes());
-                put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("dnum"), Bytes.toBytes(dnum));
-                put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("type"), Bytes.toBytes(type));
-                put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("length"), Bytes.toBytes(length));
-                put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("date"), Bytes.toBytes(date));
+                long callTime = getCallTime(2024);
+                String date = sdf.format(callTime);
+                Put put = createPut(saltRowKey(getRowKey(phoneNumber, callTime, i + j)).getBytes(),
+                        dnum, type, length, date, cellTimestamp(callTime));
                 puts.add(put);
+                addIndexPut(indexPuts, dnum, put);
+                addCounter(counters, phoneNumber, date, type, length);
             }
             // 提交数据
+            putBatch(puts);
+            putIndex(indexPuts);
+            flushCounters(counters);
+        }
+        printThroughput("Put", 10 * 10000, start);
+    }
+
+    /**
+     * 批量写入主表，记录批量Put的延迟、字节数和失败次数
+     */
+    private static void putBatch(List<Put> puts) throws IOException {
+        OperationMetrics metrics = MetricsRegistry.getDefault().get(tableName.getNameAsString(), "multiPut");
+        long start = System.nanoTime();
+        try {
             table.put(puts);
+            metrics.recordSuccess(start, OperationMetrics.sizeOf(puts), 0);
+        } catch (IOException e) {
+            metrics.recordFailure(start);
+            throw e;
         }
     }
 
+    /**
+     * rowKey的设计：手机号码_(Long.MAX_VALUE-通话时间)#序号，i、j用于避免同一时刻的记录相互覆盖
+     */
+    static String getRowKey(String phoneNumber, String date, int i, int j) throws ParseException {
+        return getRowKey(phoneNumber, sdf.parse(date).getTime(), i + j);
+    }
+
+    /**
+     * 同上，直接使用毫秒时间戳，不经过非线程安全的sdf，可在多个线程中调用
+     * @param sequence 同一用户内唯一的序号
+     */
+    static String getRowKey(String phoneNumber, long callTime, int sequence) {
+        return getRowKey(phoneNumber, callTime, String.valueOf(sequence));
+    }
+
+    /**
+     * 序号作为单独的后缀，不加到反转时间戳上，同一用户内序号不同的记录rowkey一定不同。
+     * 反转时间戳固定19位，'#'排在数字之前，同一毫秒的记录都在下一个反转时间戳之前，按时间排序不受影响
+     * （早期的rowkey是 手机号码_(Long.MAX_VALUE-通话时间+序号)，时间和序号相差相同时会相互覆盖）
+     * 迁移：旧格式的行不需要重写，反转时间戳同为19位，按时间段查询时按其中折算的时间落在对应范围内；
+     * 但用新格式重新导入旧数据会以新的rowkey再写一份，重新导入前先清空表或导入到新表
+     */
+    static String getRowKey(String phoneNumber, long callTime, String suffix) {
+        return phoneNumber + "_" + (Long.MAX_VALUE - callTime) + "#" + suffix;
+    }
+
+    /**
+     * 字符串rowkey下查询某用户[from, to)时间段的起始行（包含），时间倒序所以从to之前的最后一毫秒开始
+     */
+    static String startRowKey(String phoneNumber, long to) {
+        return phoneNumber + "_" + (Long.MAX_VALUE - to + 1);
+    }
+
+    /**
+     * 查询某用户[from, to)时间段的结束行（不包含），from这一毫秒的所有序号都在它之前
+     */
+    static String stopRowKey(String phoneNumber, long from) {
+        return phoneNumber + "_" + (Long.MAX_VALUE - from + 1);
+    }
+
+    /**
+     * 按列存储的Put：basic列族下的dnum、type、length、date四列
+     */
+    static Put createPut(String rowkey, String dnum, int type, int length, String date) {
+        return createPut(rowkey.getBytes(), dnum, type, length, date);
+    }
+
+    static Put createPut(byte[] rowkey, String dnum, int type, int length, String date) {
+        return createPut(rowkey, dnum, type, length, date, HConstants.LATEST_TIMESTAMP);
+    }
+
+    /**
+     * @param timestamp 单元格时间戳，LATEST_TIMESTAMP表示由region server填入写入时间
+     */
+    static Put createPut(byte[] rowkey, String dnum, int type, int length, String date, long timestamp) {
+        Put put = new Put(rowkey);
+        put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("dnum"), timestamp, Bytes.toBytes(dnum));
+        put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("type"), timestamp, Bytes.toBytes(type));
+        put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("length"), timestamp, Bytes.toBytes(length));
+        put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("date"), timestamp, Bytes.toBytes(date));
+        return put;
+    }
+
+    /**
+     * protobuf存储的Put：整条记录序列化后放在basic:dnum一个单元格中
+     */
+    static Put createProtocolBufferPut(String rowkey, String dnum, int type, int length, String date) {
+        return createProtocolBufferPut(rowkey, dnum, type, length, date, HConstants.LATEST_TIMESTAMP);
+    }
+
+    static Put createProtocolBufferPut(String rowkey, String dnum, int type, int length, String date, long timestamp) {
+        Put put = new Put(rowkey.getBytes());
+        CallLogOuterClass.CallLog.Builder builder = CallLogOuterClass.CallLog.newBuilder();
+        builder.setDnum(dnum);
+        builder.setLength(length);
+        builder.setType(type);
+        builder.setDate(date);
+        // 通过builder构建一个protobuf对象
+        CallLogOuterClass.CallLog callLog = builder.build();
+        put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("dnum"), timestamp, callLog.toByteArray());
+        return put;
+    }
+
+    /**
+     * 维护索引时，为主表的Put生成对应的索引Put
+     */
+    private static void addIndexPut(List<Put> indexPuts, String dnum, Put put) {
+        if (indexTable != null) {
+            indexPuts.add(CallLogDnumIndex.createIndexPut(dnum, put.getRow()));
+        }
+    }
+
+    /**
+     * 主表写入成功后再写索引，索引里多出的行查询时会被跳过，不会查出错误的记录
+     */
+    private static void putIndex(List<Put> indexPuts) throws IOException {
+        if (indexTable != null && !indexPuts.isEmpty()) {
+            indexTable.put(indexPuts);
+        }
+    }
+
+    /**
+     * 维护计数时，把一条记录累加到本批的增量中
+     */
+    private static void addCounter(CallLogCounters counters, String phoneNumber, String date, int type, int length) {
+        if (countersTable != null) {
+            counters.add(phoneNumber, date, type, length);
+        }
+    }
+
+    /**
+     * 主表写入成功后再更新计数，一批记录合并成每个(用户, 天)一个Increment
+     */
+    private static void flushCounters(CallLogCounters counters) throws IOException {
+        if (countersTable != null) {
+            counters.flush(countersTable);
+        }
+    }
+
+    /**
+     * 打印写入吞吐 records/sec
+     */
+    static void printThroughput(String label, long records, long startNanos) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1000000);
+        System.out.println(label + " 写入" + records + "条，耗时" + elapsedMillis + "ms，"
+                + (records * 1000 / elapsedMillis) + " records/sec");
+    }
+
     /**
      * 生成2024年的日期时间
      * @return 时间字符串
      */
-    private static String getDate(int year) {
-        Random random = new Random();
+    static String getDate(int year) {
+        return sdf.format(getCallTime(year));
+    }
+
+    /**
+     * 生成某年的通话时间
+     * @return 毫秒时间戳
+     */
+    static long getCallTime(int year) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         Calendar calendar = Calendar.getInstance();
-        calendar.set(2024, Calendar.JANUARY, 1);
+        calendar.clear();
+        calendar.set(year, Calendar.JANUARY, 1);
         calendar.add(Calendar.MONTH, random.nextInt(12));
         calendar.add(Calendar.DAY_OF_MONTH, random.nextInt(30));
         calendar.add(Calendar.HOUR_OF_DAY, random.nextInt(24));
-        return sdf.format(calendar.getTime());
+        return calendar.getTimeInMillis();
     }
 
     /**
@@ -167,11 +451,12 @@ public class CallLogDemo {
      * @param prefix 前缀
      * @return 11位的手机号码
      */
-    private static String getPhoneNumber(String prefix) {
+    static String getPhoneNumber(String prefix) {
         // 生成8位数字号码
         StringBuilder prefixBuilder = new StringBuilder(prefix);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         for (int i = 0; i < 8; i++) {
-            prefixBuilder.append((int) (Math.random() * 10));
+            prefixBuilder.append(random.nextInt(10));
         }
         return prefixBuilder.toString();
     }
@@ -191,28 +476,321 @@ public class CallLogDemo {
      */
     public static void scanData() throws Exception {
         String phoneNumber="18661990012";
+        long from = sdf.parse("2024-03-01 00:00:00").getTime();
+        long to = sdf.parse("2024-04-01 00:00:00").getTime();
         // 这里数据存储的时候会排序，Long.MAX_VALUE - 时间戳 越小的 越靠前
-        String startRow = phoneNumber+"_"+(Long.MAX_VALUE-
-                sdf.parse("2024-04-01 00:00:00").getTime());
-        //3.定义stopRow 包含
-        String stopRow = phoneNumber+"_"+(Long.MAX_VALUE-
-                sdf.parse("2024-03-01 00:00:00").getTime());
+        String startRow = startRowKey(phoneNumber, to);
+        //3.定义stopRow 不包含
+        String stopRow = stopRowKey(phoneNumber, from);
         Scan scan = new Scan();
         scan.withStartRow(Bytes.toBytes(startRow));
-        scan.withStopRow(Bytes.toBytes(stopRow), true);
-        ResultScanner resultScanner = table.getScanner(scan);
-        for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[0]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[1]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[1]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[2]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[2]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[3]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[3]));
-            System.out.println(rowInfo);
+        scan.withStopRow(Bytes.toBytes(stopRow));
+        setCallTimeRange(scan, from, to);
+        ResultScanner resultScanner = getScanner(scan);
+        printRows(resultScanner);
+    }
+
+    /**
+     * 使用定长二进制rowkey生成10个用户的10000条通话记录
+     * rowkey由CallLogRowKey编码，不再拼接字符串、解析时间
+     */
+    public static void insertBinaryRowKeyData() throws Exception {
+        Random random = new Random();
+        List<Put> puts = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            puts.clear();
+            String phoneNumber = getPhoneNumber("186");
+            System.out.println("rowkey:" + phoneNumber);
+            long phone = Long.parseLong(phoneNumber);
+            for (int j = 0; j < 10000; j++) {
+                String dnum = getPhoneNumber("199");
+                int length = random.nextInt(200) + 1;
+                int type = random.nextInt(2);
+                long callTime = getCallTime(2024);
+                // 序号区分同一时刻的多条记录
+                byte[] rowkey = CallLogRowKey.encode(phone, callTime, j);
+                puts.add(createPut(saltRowKey(rowkey), dnum, type, length, sdf.format(callTime), cellTimestamp(callTime)));
+            }
+            table.put(puts);
+        }
+        printThroughput("Put(binary rowkey)", 10 * 10000, start);
+    }
+
+    /**
+     * 二进制rowkey下查询某用户3月的通话记录，起止rowkey直接由手机号和时间算出
+     */
+    public static void scanBinaryRowKeyData() throws Exception {
+        long phone = 18661990012L;
+        long from = sdf.parse("2024-03-01 00:00:00").getTime();
+        long to = sdf.parse("2024-04-01 00:00:00").getTime();
+        Scan scan = new Scan();
+        scan.withStartRow(CallLogRowKey.startRow(phone, to));
+        scan.withStopRow(CallLogRowKey.stopRow(phone, from));
+        setCallTimeRange(scan, from, to);
+        ResultScanner resultScanner = getScanner(scan);
+        for (Result result : resultScanner) {
+            byte[] row = result.getRow();
+            // 加盐表的rowkey前面有盐前缀，编码部分在最后18个字节
+            int offset = row.length - CallLogRowKey.LENGTH;
+            System.out.println("rowkey:" + CallLogRowKey.toString(row, offset)
+                    + ",date:" + sdf.format(CallLogRowKey.getCallTime(row, offset))
+                    + ",dnum:" + Bytes.toString(result.getValue(Bytes.toBytes("basic"), Bytes.toBytes("dnum")))
+                    + ",length:" + Bytes.toInt(result.getValue(Bytes.toBytes("basic"), Bytes.toBytes("length")))
+                    + ",type:" + Bytes.toInt(result.getValue(Bytes.toBytes("basic"), Bytes.toBytes("type"))));
+        }
+    }
+
+    /**
+     * 全表并行扫描，统计呼出、呼入的通话次数和总时长
+     * 按region切分scan并行执行，结果按到达顺序处理
+     */
+    public static void parallelScanData() throws Exception {
+        long[] counts = new long[2];
+        long[] lengths = new long[2];
+        Scan scan = new Scan();
+        scan.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("type"));
+        scan.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("length"));
+        scan.setCaching(1000);
+        // 全表扫描的数据不放入块缓存
+        scan.setCacheBlocks(false);
+        long start = System.nanoTime();
+        try (ParallelScanner parallelScanner = new ParallelScanner(connection, Runtime.getRuntime().availableProcessors());
+             ResultScanner resultScanner = parallelScanner.getScanner(tableName, scan, ParallelScanner.Order.ARRIVAL)) {
+            for (Result result : resultScanner) {
+                byte[] type = result.getValue(Bytes.toBytes("basic"), Bytes.toBytes("type"));
+                byte[] length = result.getValue(Bytes.toBytes("basic"), Bytes.toBytes("length"));
+                if (type == null || length == null) {
+                    continue;
+                }
+                int t = Bytes.toInt(type);
+                counts[t]++;
+                lengths[t] += Bytes.toInt(length);
+            }
+        }
+        System.out.println("呼出:" + counts[0] + "次," + lengths[0] + "秒，呼入:" + counts[1] + "次," + lengths[1] + "秒，耗时"
+                + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * 执行查询，加盐表会对所有桶发起scan
+     */
+    public static List<CallLogRecord> query(CallLogQuery query) throws Exception {
+        OperationMetrics metrics = MetricsRegistry.getDefault().get(tableName.getNameAsString(), "query");
+        long start = System.nanoTime();
+        try {
+            List<CallLogRecord> records = CallLogQuery.read(getScanner(query.cellTimestamps(callTimeTimestamps).toScan()));
+            metrics.recordSuccess(start, 0, 0);
+            return records;
+        } catch (IOException e) {
+            metrics.recordFailure(start);
+            throw e;
+        }
+    }
+
+    private static synchronized CompletableFuture<AsyncConnection> getAsyncConnection() {
+        if (asyncConnection == null) {
+            asyncConnection = ConnectionFactory.createAsyncConnection(connection.getConfiguration());
+        }
+        return asyncConnection;
+    }
+
+    /**
+     * query的异步版本，调用线程不等待RPC
+     * 加盐表对每个桶并发发起scan，全部完成后按去盐后的rowkey排序并截取limit条
+     */
+    public static CompletableFuture<List<CallLogRecord>> queryAsync(CallLogQuery query) throws Exception {
+        Scan scan = query.cellTimestamps(callTimeTimestamps).toScan();
+        List<Scan> scans = salter == null ? Collections.singletonList(scan) : salter.getBucketScans(scan);
+        return getAsyncConnection().thenCompose(asyncConnection -> {
+            AsyncTable<AdvancedScanResultConsumer> asyncTable = asyncConnection.getTable(tableName);
+            List<CallLogRecord> records = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<Long>> futures = new ArrayList<>(scans.size());
+            for (Scan bucketScan : scans) {
+                // 每行只做解码，同步完成
+                FlowControlledScanConsumer consumer = new FlowControlledScanConsumer(result -> {
+                    records.add(CallLogRecord.fromResult(result));
+                    return CompletableFuture.completedFuture(null);
+                }, 1000);
+                asyncTable.scan(bucketScan, consumer);
+                futures.add(consumer.getFuture());
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                if (salter == null) {
+                    return records;
+                }
+                List<CallLogRecord> sorted = new ArrayList<>(records);
+                sorted.sort(Comparator.comparing(record -> salter.unsalt(record.getRowkey())));
+                return scan.getLimit() > 0 && sorted.size() > scan.getLimit()
+                        ? sorted.subList(0, scan.getLimit()) : sorted;
+            });
+        });
+    }
+
+    /**
+     * 异步查询某用户3月呼出的前100条通话记录
+     */
+    public static void queryDataAsync() throws Exception {
+        CallLogQuery query = CallLogQuery.forUser("18661990012")
+                .between("2024-03-01 00:00:00", "2024-04-01 00:00:00")
+                .type(0)
+                .select(CallLogQuery.Field.DNUM, CallLogQuery.Field.LENGTH)
+                .limit(100);
+        queryAsync(query).thenAccept(records -> records.forEach(System.out::println)).join();
+    }
+
+    /**
+     * 查询某用户3月呼出的前100条通话记录，只返回对方号码和通话时长
+     */
+    public static void queryData() throws Exception {
+        CallLogQuery query = CallLogQuery.forUser("18661990012")
+                .between("2024-03-01 00:00:00", "2024-04-01 00:00:00")
+                .type(0)
+                .select(CallLogQuery.Field.DNUM, CallLogQuery.Field.LENGTH)
+                .limit(100);
+        for (CallLogRecord record : query(query)) {
+            System.out.println(record);
+        }
+    }
+
+    /**
+     * 打印扫描结果，整个循环复用一个视图和一个StringBuilder，不复制单元格
+     */
+    static void printRows(ResultScanner resultScanner) {
+        CallLogView view = new CallLogView();
+        StringBuilder rowInfo = new StringBuilder(128);
+        for (Result result : resultScanner) {
+            rowInfo.setLength(0);
+            System.out.println(view.wrap(result).appendTo(rowInfo));
+        }
+    }
+
+    /**
+     * 在线把通话记录表切换到另一个存储预设，并立即发起major compaction按新配置重写已有数据
+     */
+    public static void applyProfile(TableProfile profile) throws IOException {
+        profile.applyTo(admin, tableName, true);
+        System.out.println("已应用" + profile + "，压缩：" + profile.getCompression().getName());
+    }
+
+    /**
+     * 创建dnum索引表，之后insertData()、insertProtocolBuffer()会同时写索引，已有数据用CallLogIndexRebuildJob重建
+     */
+    public static void createIndexTable() throws IOException {
+        CallLogDnumIndex.createIndexTable(admin);
+        if (indexTable == null) {
+            indexTable = connection.getTable(CallLogDnumIndex.INDEX_TABLE);
+        }
+    }
+
+    /**
+     * 通过索引查询最近一周打给某号码的通话记录
+     */
+    public static void findCallsTo() throws Exception {
+        if (indexTable == null) {
+            System.out.println("索引表不存在，先调用createIndexTable()");
+            return;
+        }
+        long to = sdf.parse("2024-12-31 00:00:00").getTime();
+        long from = to - 7 * 24 * 3600 * 1000L;
+        CallLogDnumIndex index = new CallLogDnumIndex(table, indexTable);
+        long start = System.nanoTime();
+        List<Result> results = index.findCalls("19961990012", from, to);
+        CallLogView view = new CallLogView();
+        StringBuilder rowInfo = new StringBuilder(128);
+        for (Result result : results) {
+            rowInfo.setLength(0);
+            System.out.println(view.wrap(result).appendTo(rowInfo));
+        }
+        System.out.println("查到" + results.size() + "条，耗时" + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * 创建每日计数表，之后insertData()、insertProtocolBuffer()、insertDataStreaming()和ingestDirectory()
+     * 写入成功后会更新计数；generateData()和bulkLoad()不更新计数，见CallLogCounters
+     */
+    public static void createCountersTable() throws IOException {
+        CallLogCounters.createCountersTable(admin);
+        if (countersTable == null) {
+            countersTable = connection.getTable(CallLogCounters.COUNTERS_TABLE);
+        }
+    }
+
+    /**
+     * 一次Get读取某用户某天的实时累计值
+     */
+    public static void dailyTotals() throws IOException {
+        if (countersTable == null) {
+            System.out.println("计数表不存在，先调用createCountersTable()");
+            return;
+        }
+        long[] totals = CallLogCounters.getDailyTotals(countersTable, "18661990012", "2024-03-01");
+        System.out.println("呼出" + totals[0] + "次，" + totals[1] + "秒；呼入" + totals[2] + "次，" + totals[3] + "秒");
+    }
+
+    /**
+     * 创建按月汇总表，数据由CallLogMonthlyRollupJob生成
+     */
+    public static void createRollupTable() throws IOException {
+        CallLogMonthlyRollupJob.createRollupTable(admin);
+    }
+
+    /**
+     * 从汇总表读取某用户2024年每个月的通话统计，最多12行，不扫描原始记录
+     */
+    public static void monthlyRollup() throws IOException {
+        String phoneNumber = "18661990012";
+        Scan scan = new Scan();
+        scan.withStartRow(Bytes.toBytes(phoneNumber + "_202401"));
+        scan.withStopRow(Bytes.toBytes(phoneNumber + "_202501"));
+        try (Table rollupTable = connection.getTable(CallLogMonthlyRollupJob.ROLLUP_TABLE);
+             ResultScanner resultScanner = rollupTable.getScanner(scan)) {
+            for (Result result : resultScanner) {
+                System.out.println(Bytes.toString(result.getRow())
+                        + ",calls:" + Bytes.toLong(result.getValue(CallLogMonthlyRollupJob.FAMILY, CallLogMonthlyRollupJob.CALLS))
+                        + ",total_length:" + Bytes.toLong(result.getValue(CallLogMonthlyRollupJob.FAMILY, CallLogMonthlyRollupJob.TOTAL_LENGTH))
+                        + ",avg_length:" + Bytes.toDouble(result.getValue(CallLogMonthlyRollupJob.FAMILY, CallLogMonthlyRollupJob.AVG_LENGTH))
+                        + ",outbound:" + Bytes.toLong(result.getValue(CallLogMonthlyRollupJob.FAMILY, CallLogMonthlyRollupJob.OUTBOUND))
+                        + ",inbound:" + Bytes.toLong(result.getValue(CallLogMonthlyRollupJob.FAMILY, CallLogMonthlyRollupJob.INBOUND)));
+            }
+        }
+    }
+
+    /**
+     * 在线给表挂上通话时长聚合的协处理器
+     * @param jarPath 协处理器jar在HDFS上的路径，为null时从region server的classpath加载
+     */
+    public static void enableAggregation(String jarPath) throws IOException {
+        TableDescriptor descriptor = admin.getDescriptor(tableName);
+        String className = CallLogAggregateEndpoint.class.getName();
+        if (descriptor.hasCoprocessor(className)) {
+            System.out.println("协处理器已存在");
+            return;
+        }
+        CoprocessorDescriptorBuilder coprocessor = CoprocessorDescriptorBuilder.newBuilder(className)
+                .setPriority(Coprocessor.PRIORITY_USER);
+        if (jarPath != null) {
+            coprocessor.setJarPath(jarPath);
+        }
+        TableDescriptor newDescriptor = TableDescriptorBuilder.newBuilder(descriptor)
+                .setCoprocessor(coprocessor.build())
+                .build();
+        admin.modifyTable(newDescriptor);
+    }
+
+    /**
+     * 统计某用户3月的通话时长：在region内聚合，只返回每个呼叫类型的统计结果
+     * 加盐表对每个桶分别聚合再合并
+     */
+    public static void aggregateData() throws Exception {
+        Scan scan = CallLogQuery.forUser("18661990012")
+                .between("2024-03-01 00:00:00", "2024-04-01 00:00:00")
+                .cellTimestamps(callTimeTimestamps)
+                .toScan();
+        Map<Integer, CallLogAggregationClient.Stats> stats =
+                new CallLogAggregationClient(table, salter).aggregate(scan, CallLogAggregationClient.DEFAULT_BOUNDS);
+        for (Map.Entry<Integer, CallLogAggregationClient.Stats> entry : stats.entrySet()) {
+            System.out.println((entry.getKey() == 0 ? "呼出 " : "呼入 ") + entry.getValue());
         }
     }
 
@@ -220,7 +798,7 @@ public class CallLogDemo {
      * 删除指定某行的某列 某单元格
      */
     public static void deleteRowCell() throws IOException {
-        Delete delete = new Delete(Bytes.toBytes("18661990012_9223370324984787969"));
+        Delete delete = new Delete(Bytes.toBytes("18661990012_9223370324984787969#0"));
         delete.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("length"));
         table.delete(delete);
     }
@@ -229,7 +807,7 @@ public class CallLogDemo {
      * 添加指定某行某列 某单元格
      */
     public static void insertRowCell() throws IOException {
-        Put put = new Put(Bytes.toBytes("18661990012_9223370324984787969"));
+        Put put = new Put(Bytes.toBytes("18661990012_9223370324984787969#0"));
         put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("length"), Bytes.toBytes(100));
         table.put(put);
     }
@@ -252,20 +830,8 @@ public class CallLogDemo {
         );
         filterList.addFilter(filter);
         scan.setFilter(filterList);
-        ResultScanner resultScanner = table.getScanner(scan);
-        for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[0]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[1]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[1]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[2]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[2]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[3]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[3]));
-            System.out.println(rowInfo);
-        }
+        ResultScanner resultScanner = getScanner(scan);
+        printRows(resultScanner);
     }
 
     /**
@@ -280,47 +846,20 @@ public class CallLogDemo {
         FamilyFilter familyFilter = new FamilyFilter(CompareOperator.EQUAL, binaryComparator);
         filter.addFilter(familyFilter);
         scan.setFilter(filter);
-        ResultScanner resultScanner = table.getScanner(scan);
-        for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[0]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[1]))
-                    +":"+Bytes.toString(CellUtil.cloneValue(cells[1]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[2]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[2]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[3]))
-                    +":"+Bytes.toInt(CellUtil.cloneValue(cells[3]));
-            System.out.println(rowInfo);
-        }
+        ResultScanner resultScanner = getScanner(scan);
+        printRows(resultScanner);
     }
 
     /**
-     * rowkey过滤器
+     * rowkey前缀查询
+     * setRowPrefixFilter把前缀换算成起止行，只扫描该用户的行；PrefixFilter要扫全表，
+     * 而且匹配的是加盐后的rowkey，加盐表上什么都匹配不到
      */
     public static void rowKeyFilter() throws IOException {
         Scan scan = new Scan();
-        // 添加过滤器
-        // 声明多个过滤器之间的关系，默认为and关系
-        FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
-        PrefixFilter prefixFilter = new PrefixFilter(Bytes.toBytes("18661990012"));
-        filterList.addFilter(prefixFilter);
-        scan.setFilter(filterList);
-        ResultScanner resultScanner = table.getScanner(scan);
-        for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[0]));
-            rowInfo +=":"+Bytes.toString(CellUtil.cloneValue(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[1]));
-            rowInfo +=":"+Bytes.toString(CellUtil.cloneValue(cells[1]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[2]));
-            rowInfo +=":"+Bytes.toInt(CellUtil.cloneValue(cells[2]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[3]));
-            rowInfo +=":"+Bytes.toInt(CellUtil.cloneValue(cells[3]));
-            System.out.println(rowInfo);
-        }
+        scan.setRowPrefixFilter(Bytes.toBytes("18661990012_"));
+        ResultScanner resultScanner = getScanner(scan);
+        printRows(resultScanner);
 
     }
 
@@ -339,32 +878,24 @@ public class CallLogDemo {
                 Bytes.toBytes(0)
         );
         filterList.addFilter(filter);
-        PrefixFilter prefixFilter = new PrefixFilter(Bytes.toBytes("18661990012"));
-        filterList.addFilter(prefixFilter);
         scan.setFilter(filterList);
-        ResultScanner resultScanner = table.getScanner(scan);
-        for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[0]));
-            rowInfo +=":"+Bytes.toString(CellUtil.cloneValue(cells[0]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[1]));
-            rowInfo +=":"+Bytes.toString(CellUtil.cloneValue(cells[1]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[2]));
-            rowInfo +=":"+Bytes.toInt(CellUtil.cloneValue(cells[2]));
-            rowInfo +=","+Bytes.toString(CellUtil.cloneQualifier(cells[3]));
-            rowInfo +=":"+Bytes.toInt(CellUtil.cloneValue(cells[3]));
-            System.out.println(rowInfo);
-        }
+        // 用户号码作为rowkey前缀换算成起止行，见rowKeyFilter
+        scan.setRowPrefixFilter(Bytes.toBytes("18661990012_"));
+        ResultScanner resultScanner = getScanner(scan);
+        printRows(resultScanner);
 
     }
 
     public static void insertProtocolBuffer() throws Exception {
         Random random = new Random();
         List<Put> puts = new ArrayList<>();
+        List<Put> indexPuts = new ArrayList<>();
+        CallLogCounters counters = new CallLogCounters();
+        long start = System.nanoTime();
         for (int i = 0; i < 10; i++) {
             // 清理表格
             puts.clear();
+            indexPuts.clear();
             // 生成rowkey 手机号码
             String phoneNumber = getPhoneNumber("186");
             System.out.println("rowkey:" + phoneNumber);
@@ -372,54 +903,197 @@ public class CallLogDemo {
                 String dnum = getPhoneNumber("199");
                 int length = random.nextInt(200) + 1;
                 int type = random.nextInt(2);
-                String date = getDate(2024);
-                // rowKey的设计
-                String rowkey = phoneNumber + "_" + (Long.MAX_VALUE - sdf.parse(date).getTime() + i +j);
-                Put put = new Put(rowkey.getBytes());
-                CallLogOuterClass.CallLog.Builder builder = CallLogOuterClass.CallLog.newBuilder();
-                builder.setDnum(dnum);
-                builder.setLength(length);
-                builder.setType(type);
-                builder.setDate(date);
-                // 通过builder构建一个protobuf对象
-                CallLogOuterClass.CallLog callLog = builder.build();
-                put.addColumn(Bytes.toBytes("basic"), Bytes.toBytes("dnum"),callLog.toByteArray());
+                long callTime = getCallTime(2024);
+                String date = sdf.format(callTime);
+                Put put = createProtocolBufferPut(saltRowKey(getRowKey(phoneNumber, callTime, i + j)),
+                        dnum, type, length, date, cellTimestamp(callTime));
                 puts.add(put);
+                addIndexPut(indexPuts, dnum, put);
+                addCounter(counters, phoneNumber, date, type, length);
             }
             // 提交数据
-            table.put(puts);
+            putBatch(puts);
+            putIndex(indexPuts);
+            flushCounters(counters);
         }
+        printThroughput("Put(protobuf)", 10 * 10000, start);
+    }
+
+    /**
+     * 通过BufferedMutator流式写入10个用户的10000条通话记录
+     * 逐条生成逐条提交，不再整批构造List<Put>
+     */
+    public static void insertDataStreaming() throws Exception {
+        Random random = new Random();
+        CallLogCounters counters = new CallLogCounters();
+        long start = System.nanoTime();
+        // 队列1万条，写缓冲4MB，最长1秒刷写一次
+        try (CallLogIngestPipeline pipeline =
+                     new CallLogIngestPipeline(connection, tableName, 10000, 4 * 1024 * 1024, 1000)) {
+            for (int i = 0; i < 10; i++) {
+                String phoneNumber = getPhoneNumber("186");
+                System.out.println("rowkey:" + phoneNumber);
+                for (int j = 0; j < 10000; j++) {
+                    String dnum = getPhoneNumber("199");
+                    int length = random.nextInt(200) + 1;
+                    int type = random.nextInt(2);
+                    long callTime = getCallTime(2024);
+                    String date = sdf.format(callTime);
+                    pipeline.submit(createPut(saltRowKey(getRowKey(phoneNumber, callTime, i + j)).getBytes(),
+                            dnum, type, length, date, cellTimestamp(callTime)));
+                    addCounter(counters, phoneNumber, date, type, length);
+                }
+                System.out.println("in-flight bytes:" + pipeline.getInFlightBytes()
+                        + ", flushes:" + pipeline.getFlushes());
+            }
+        }
+        // close没有抛出异常时所有记录都已写入主表
+        flushCounters(counters);
+        printThroughput("BufferedMutator", 10 * 10000, start);
+    }
+
+    /**
+     * 用CallLogGenerator并行生成数据，直接流式写入BufferedMutator
+     * 每个CPU核一个生成线程，同一个seed总是生成相同的数据集
+     * @param users 用户数
+     * @param fromYear 起始年份
+     * @param toYear 结束年份（包含）
+     * @param recordsPerUser 平均每个用户的记录数
+     * @param skew 主叫和被叫的Zipf指数，0为均匀分布
+     */
+    public static void generateData(int users, int fromYear, int toYear, int recordsPerUser, double skew)
+            throws Exception {
+        CallLogGenerator generator = new CallLogGenerator(42)
+                .users(users)
+                .years(fromYear, toYear)
+                .recordsPerUser(recordsPerUser)
+                .callerSkew(skew)
+                .calleeSkew(skew, 100000);
+        long start = System.nanoTime();
+        long records;
+        try (CallLogIngestPipeline pipeline =
+                     new CallLogIngestPipeline(connection, tableName, 10000, 4 * 1024 * 1024, 1000)) {
+            records = generator.generate((user, sequence, phoneNumber, dnum, type, length, callTime) ->
+                    pipeline.submit(createPut(saltRowKey(getRowKey(phoneNumber, callTime, sequence)).getBytes(),
+                            dnum, type, length, CallLogGenerator.formatDate(callTime), cellTimestamp(callTime))));
+        }
+        printThroughput("Generator", records, start);
+    }
+
+    /**
+     * 持续监视目录，把新的.csv/.pb通话记录文件写入表中，每1000条或最长1秒提交一次，Ctrl+C退出
+     * 重启后从目录下的检查点文件继续，不会重复读取已提交的数据
+     */
+    public static void ingestDirectory(String directory) throws Exception {
+        CallLogDirectoryIngest ingest = new CallLogDirectoryIngest(connection, tableName,
+                Paths.get(directory), salter, 1000, 1000, callTimeTimestamps,
+                countersTable == null ? null : CallLogCounters.COUNTERS_TABLE);
+        Thread worker = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ingest.close();
+            try {
+                // 等待最后一批提交
+                worker.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        ingest.run();
+        System.out.println("写入" + ingest.getIngestedRecords() + "条，提交" + ingest.getFlushes() + "次");
+    }
+
+    /**
+     * 通过HFile批量导入生成10个用户的10000条通话记录，绕过WAL和memstore
+     * @param protobuf 是否使用protobuf存储格式
+     */
+    public static void bulkLoad(boolean protobuf) throws Exception {
+        CallLogBulkLoader loader = new CallLogBulkLoader(connection, tableName,
+                new Path("/tmp/calllog_bulkload/" + System.currentTimeMillis()), salter, callTimeTimestamps);
+        long start = System.nanoTime();
+        long records = loader.load(10, 10000, protobuf);
+        printThroughput(protobuf ? "BulkLoad(protobuf)" : "BulkLoad", records, start);
     }
 
     public static void scanBufferData() throws Exception{
         Scan scan = new Scan();
         String rowkey = "18640455510";
-        String startRow = rowkey + "_" +
-                (Long.MAX_VALUE-sdf.parse("2024-04-01 00:00:00").getTime());
-        String stopRow = rowkey + "_" +
-                (Long.MAX_VALUE-sdf.parse("2024-03-01 00:00:00").getTime());
-        scan.withStartRow(Bytes.toBytes(startRow));
-        scan.withStopRow(Bytes.toBytes(stopRow), true);
-        ResultScanner resultScanner = table.getScanner(scan);
+        long from = sdf.parse("2024-03-01 00:00:00").getTime();
+        long to = sdf.parse("2024-04-01 00:00:00").getTime();
+        scan.withStartRow(Bytes.toBytes(startRowKey(rowkey, to)));
+        scan.withStopRow(Bytes.toBytes(stopRowKey(rowkey, from)));
+        setCallTimeRange(scan, from, to);
+        ResultScanner resultScanner = getScanner(scan);
+        printProtocolBufferRows(resultScanner);
+    }
+
+    /**
+     * 打印protobuf格式的扫描结果，直接在单元格的数组上解码protobuf，不复制值
+     */
+    static void printProtocolBufferRows(ResultScanner resultScanner) throws IOException {
+        CallLogProtobufView view = new CallLogProtobufView();
+        StringBuilder rowInfo = new StringBuilder(128);
         for(Result result:resultScanner){
-            Cell[] cells = result.rawCells();
-            String rowInfo = "rowkey:"+Bytes.toString(CellUtil.cloneRow(cells[0]));
-            byte[] value = CellUtil.cloneValue(cells[0]);
-            CallLogOuterClass.CallLog callLog = CallLogOuterClass.CallLog.parseFrom(value);
-            rowInfo +=","+callLog.getDnum();
-            rowInfo +=","+callLog.getLength();
-            rowInfo +=","+callLog.getType();
-            rowInfo +=","+callLog.getDate();
+            Cell cell = result.rawCells()[0];
+            view.wrap(cell);
+            rowInfo.setLength(0);
+            rowInfo.append("rowkey:").append(Bytes.toString(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength()));
+            view.appendDnum(rowInfo.append(','));
+            rowInfo.append(',').append(view.getLength());
+            rowInfo.append(',').append(view.getType());
+            view.appendDate(rowInfo.append(','));
             System.out.println(rowInfo);
         }
     }
+
+    /**
+     * protobuf格式下的服务端过滤
+     * 过滤出某用户3月份type=0且通话时长在60~200秒之间的记录，只有满足条件的行会传回客户端
+     */
+    public static void findByProtobufFilter() throws Exception {
+        String rowkey = "18640455510";
+        long from = sdf.parse("2024-03-01 00:00:00").getTime();
+        long to = sdf.parse("2024-04-01 00:00:00").getTime();
+        // 起止行限定在该用户3月的范围内，加盐表由getScanner对每个桶分别扫描
+        Scan scan = new Scan();
+        scan.withStartRow(Bytes.toBytes(startRowKey(rowkey, to)));
+        scan.withStopRow(Bytes.toBytes(stopRowKey(rowkey, from)));
+        setCallTimeRange(scan, from, to);
+        scan.setFilter(new CallLogProtobufFilter()
+                .typeEquals(0)
+                .lengthBetween(60, 200)
+                .dateBetween("2024-03-01 00:00:00", "2024-04-01 00:00:00"));
+        ResultScanner resultScanner = getScanner(scan);
+        printProtocolBufferRows(resultScanner);
+    }
+
     public static void main(String[] args) throws IOException {
         try {
             CallLogDemo.init();
 //            String[] columnFamilies = {"basic"};
 //            CallLogDemo.createTable(columnFamilies);
+//            CallLogDemo.createTable(columnFamilies, 16);
+//            CallLogDemo.createTable(columnFamilies, 16, TableProfile.WRITE_HEAVY_CDR);
+//            CallLogDemo.createTable(columnFamilies, 16, TableProfile.WRITE_HEAVY_CDR, true);
+//            CallLogDemo.applyProfile(TableProfile.ARCHIVAL);
 //            CallLogDemo.insertProtocolBuffer();
+//            CallLogDemo.bulkLoad(true);
+//            CallLogDemo.insertDataStreaming();
+//            CallLogDemo.generateData(1000, 2023, 2024, 10000, 1.0);
+//            CallLogDemo.ingestDirectory("/data/calllog/incoming");
 //            scanData();
+//            insertBinaryRowKeyData();
+//            scanBinaryRowKeyData();
+//            parallelScanData();
+//            queryData();
+//            queryDataAsync();
+//            enableAggregation(null);
+//            aggregateData();
+//            createIndexTable();
+//            findCallsTo();
+//            createCountersTable();
+//            dailyTotals();
+//            createRollupTable();
+//            monthlyRollup();
 //            deleteRowCell();
 //            insertRowCell();
 //            findByKeyMethodShow();
@@ -427,6 +1101,7 @@ public class CallLogDemo {
 //            rowKeyFilter();
 //            composeFilter();
             scanBufferData();
+//            findByProtobufFilter();
         }  catch (Exception e){
             throw new RuntimeException(e);
         } finally {
@@ -0,0 +1,460 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监视本地目录，持续把通话记录文件写入HBase
+ * 支持两种文件：
+ * .csv 每行 主叫号码,对方号码,type,length,yyyy-MM-dd HH:mm:ss，写成按列存储的Put；
+ * .pb  长度前缀（varint）分隔的CallLog消息，文件名以主叫号码开头（如 18661990012_0001.pb），原样写成protobuf存储的Put。
+ * 文件按内存映射读取，只消费完整的行/消息，写到一半的记录等文件变长后再读。
+ * 记录攒成微批写入：达到batchSize条或最早一条已等待maxLatencyMs毫秒时提交一次，
+ * 提交成功后才把各文件的偏移量写入检查点文件，重启后从检查点继续；指定了计数表时，每批提交成功后更新每日计数。
+ * 字段解析不了的行/消息（如CSV表头）打印偏移量后跳过。
+ * 崩溃时最后一批可能重发，rowkey由通话时间、文件编号和记录在文件中的偏移量决定，重发只会覆盖相同的行。
+ * 文件编号在第一次读到文件时分配并写入检查点，删除检查点后编号会重新分配，已写入的记录再读一遍会以新的rowkey重复写入
+ */
+public class CallLogDirectoryIngest implements Closeable {
+    // 检查点文件名，保存在监视的目录下
+    static final String CHECKPOINT_FILE = ".calllog-checkpoint";
+    // 每次映射的最大字节数
+    private static final int MAX_MAP_SIZE = 64 * 1024 * 1024;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 解析出的一条记录
+     */
+    interface RecordHandler {
+        /**
+         * @param offset 记录在文件中的起始偏移量
+         * @param callTime 由date解析出的通话时间
+         * @param message .pb文件中的原始CallLog消息，.csv文件为null
+         */
+        void accept(long offset, String phoneNumber, String dnum, int type, int length, String date, long callTime,
+                    byte[] message) throws IOException;
+    }
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final Path directory;
+    // rowkey加盐，为null表示不加盐
+    private final RowKeySalter salter;
+    // 单元格时间戳使用通话时间，否则由region server填入写入时间
+    private final boolean callTimeTimestamps;
+    // 每日计数表，为null表示不维护计数
+    private final TableName countersTableName;
+    private final int batchSize;
+    private final long maxLatencyMs;
+    private final Path checkpointPath;
+
+    // 已提交到HBase的偏移量
+    private final Map<String, Long> committed = new HashMap<>();
+    // 已解析（可能还没提交）的偏移量
+    private final Map<String, Long> parsed = new HashMap<>();
+    // 文件名 -> 文件编号，与偏移量一起保存在检查点中
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private int nextFileId;
+    private final List<Put> pending = new ArrayList<>();
+    // 与pending同批的计数增量
+    private final CallLogCounters counters = new CallLogCounters();
+    private Table countersTable;
+    private long firstPendingNanos;
+    private long ingestedRecords;
+    private long flushes;
+    private volatile boolean closed;
+
+    /**
+     * @param batchSize 每批最多的记录数
+     * @param maxLatencyMs 一条记录从读出到提交的最长等待时间
+     */
+    public CallLogDirectoryIngest(Connection connection, TableName tableName, Path directory, RowKeySalter salter,
+                                  int batchSize, long maxLatencyMs) {
+        this(connection, tableName, directory, salter, batchSize, maxLatencyMs, false);
+    }
+
+    /**
+     * @param callTimeTimestamps 为true时单元格时间戳为通话时间，见CallLogDemo.createTable(..., true)
+     */
+    public CallLogDirectoryIngest(Connection connection, TableName tableName, Path directory, RowKeySalter salter,
+                                  int batchSize, long maxLatencyMs, boolean callTimeTimestamps) {
+        this(connection, tableName, directory, salter, batchSize, maxLatencyMs, callTimeTimestamps, null);
+    }
+
+    /**
+     * @param countersTableName 每日计数表，见CallLogCounters，为null时不维护计数
+     */
+    public CallLogDirectoryIngest(Connection connection, TableName tableName, Path directory, RowKeySalter salter,
+                                  int batchSize, long maxLatencyMs, boolean callTimeTimestamps,
+                                  TableName countersTableName) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.directory = directory;
+        this.salter = salter;
+        this.callTimeTimestamps = callTimeTimestamps;
+        this.countersTableName = countersTableName;
+        this.batchSize = batchSize;
+        this.maxLatencyMs = maxLatencyMs;
+        this.checkpointPath = directory.resolve(CHECKPOINT_FILE);
+    }
+
+    /**
+     * 先读完目录中已有的文件，再监视新建和追加，直到close
+     */
+    public void run() throws IOException {
+        loadCheckpoint();
+        try (WatchService watchService = directory.getFileSystem().newWatchService();
+             Table table = connection.getTable(tableName);
+             Table counterTable = countersTableName == null ? null : connection.getTable(countersTableName)) {
+            this.countersTable = counterTable;
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // 注册之后再扫描，避免漏掉两者之间新建的文件
+            scanAll(table);
+            while (!closed) {
+                // 有待提交的记录时，最多等到它们的延迟上限
+                long waitMs = pending.isEmpty() ? 1000
+                        : Math.max(1, maxLatencyMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstPendingNanos));
+                WatchKey key;
+                try {
+                    key = watchService.poll(waitMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ClosedWatchServiceException e) {
+                    break;
+                }
+                if (key != null) {
+                    Set<Path> changed = new TreeSet<>();
+                    boolean overflow = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                    if (overflow) {
+                        // 事件丢失时重新扫描整个目录
+                        scanAll(table);
+                    } else {
+                        for (Path file : changed) {
+                            readFile(table, file);
+                        }
+                    }
+                }
+                if (!pending.isEmpty()
+                        && System.nanoTime() - firstPendingNanos >= TimeUnit.MILLISECONDS.toNanos(maxLatencyMs)) {
+                    flush(table);
+                }
+            }
+            flush(table);
+        }
+    }
+
+    private void scanAll(Table table) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            readFile(table, file);
+        }
+    }
+
+    /**
+     * 从上次解析到的位置读到文件末尾的最后一条完整记录
+     */
+    private void readFile(Table table, Path file) throws IOException {
+        String name = file.getFileName().toString();
+        boolean csv = name.endsWith(".csv");
+        if (name.startsWith(".") || !(csv || name.endsWith(".pb")) || !Files.isRegularFile(file)) {
+            return;
+        }
+        String caller = csv ? null : name.split("[_.]", 2)[0];
+        int fileId = fileId(name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = parsed.getOrDefault(name, 0L);
+            if (size < position) {
+                // 文件被截断重写，从头开始
+                System.out.println(name + "被截断，从头读取");
+                position = 0;
+            }
+            while (position < size) {
+                int mapSize = (int) Math.min(size - position, MAX_MAP_SIZE);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, mapSize);
+                long base = position;
+                RecordHandler handler = (offset, phoneNumber, dnum, type, length, date, callTime, message) ->
+                        add(table, rowKeySuffix(fileId, base + offset), phoneNumber, dnum, type, length, date, callTime,
+                                message);
+                int consumed = csv ? parseCsv(buffer, handler) : parseProtobuf(buffer, caller, handler);
+                if (consumed == 0) {
+                    if (mapSize == MAX_MAP_SIZE) {
+                        throw new IOException(name + "在偏移量" + position + "处的记录超过" + MAX_MAP_SIZE + "字节");
+                    }
+                    // 剩下的是写到一半的记录
+                    break;
+                }
+                position += consumed;
+                parsed.put(name, position);
+            }
+        }
+    }
+
+    private void add(Table table, String suffix, String phoneNumber, String dnum, int type, int length, String date,
+                     long callTime, byte[] message) throws IOException {
+        String rowkey = CallLogDemo.getRowKey(phoneNumber, callTime, suffix);
+        if (salter != null) {
+            rowkey = salter.salt(rowkey);
+        }
+        long timestamp = callTimeTimestamps ? callTime : HConstants.LATEST_TIMESTAMP;
+        Put put;
+        if (message == null) {
+            put = CallLogDemo.createPut(Bytes.toBytes(rowkey), dnum, type, length, date, timestamp);
+        } else {
+            put = new Put(Bytes.toBytes(rowkey));
+            put.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.DNUM.getQualifier(), timestamp, message);
+        }
+        if (pending.isEmpty()) {
+            firstPendingNanos = System.nanoTime();
+        }
+        pending.add(put);
+        if (countersTable != null) {
+            counters.add(phoneNumber, date, type, length);
+        }
+        if (pending.size() >= batchSize) {
+            flush(table);
+        }
+    }
+
+    /**
+     * 文件的编号，第一次见到时分配并立即写入检查点，这个文件的记录写入HBase之前编号已经持久化，
+     * 重启后编号不变，重发的记录rowkey也不变
+     */
+    int fileId(String name) throws IOException {
+        Integer id = fileIds.get(name);
+        if (id == null) {
+            id = nextFileId++;
+            fileIds.put(name, id);
+            saveCheckpoint();
+        }
+        return id;
+    }
+
+    /**
+     * rowkey的后缀：文件编号-偏移量，区分同一时刻的记录，重发时不变。
+     * 编号在检查点内唯一，'-'分隔两个数字，不同的(文件, 偏移量)后缀一定不同；文件名本身可能带'_'，不能直接放进rowkey
+     */
+    static String rowKeySuffix(int fileId, long offset) {
+        return fileId + "-" + offset;
+    }
+
+    static long parseCallTime(String date) {
+        return LocalDateTime.parse(date, DATE_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 提交当前批次，成功后推进检查点
+     */
+    private void flush(Table table) throws IOException {
+        if (!pending.isEmpty()) {
+            table.put(pending);
+            ingestedRecords += pending.size();
+            flushes++;
+            pending.clear();
+        }
+        if (countersTable != null) {
+            // 主表写入成功后再更新计数；失败的增量留到下一批重试
+            counters.flush(countersTable);
+        }
+        // parsed中的记录都已加入pending并在上面写入成功；readFile中途触发flush时当前文件的偏移量还是旧值，只会多重发不会丢
+        if (!committed.equals(parsed)) {
+            committed.putAll(parsed);
+            saveCheckpoint();
+        }
+    }
+
+    void loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointPath)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointPath)) {
+            properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            // 偏移量,文件编号；早期的检查点没有编号，读到该文件时再分配
+            String[] value = properties.getProperty(name).split(",");
+            long offset = Long.parseLong(value[0]);
+            committed.put(name, offset);
+            parsed.put(name, offset);
+            if (value.length > 1) {
+                int id = Integer.parseInt(value[1]);
+                fileIds.put(name, id);
+                nextFileId = Math.max(nextFileId, id + 1);
+            }
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，崩溃时检查点要么是旧的要么是新的
+     */
+    private void saveCheckpoint() throws IOException {
+        Properties properties = new Properties();
+        Set<String> names = new HashSet<>(committed.keySet());
+        names.addAll(fileIds.keySet());
+        for (String name : names) {
+            Integer id = fileIds.get(name);
+            properties.setProperty(name, committed.getOrDefault(name, 0L) + (id == null ? "" : "," + id));
+        }
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        Files.move(temp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 解析完整的CSV行，末尾没有换行的行不消费
+     * @return 消费的字节数
+     */
+    static int parseCsv(ByteBuffer buffer, RecordHandler handler) throws IOException {
+        int limit = buffer.limit();
+        int lineStart = 0;
+        String[] fields = new String[5];
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+            int count = 0;
+            int fieldStart = lineStart;
+            for (int j = lineStart; j <= lineEnd && count < fields.length; j++) {
+                if (j == lineEnd || buffer.get(j) == ',') {
+                    fields[count++] = ascii(buffer, fieldStart, j);
+                    fieldStart = j + 1;
+                }
+            }
+            if (count == fields.length) {
+                int type;
+                int length;
+                long callTime;
+                try {
+                    type = Integer.parseInt(fields[2]);
+                    length = Integer.parseInt(fields[3]);
+                    callTime = parseCallTime(fields[4]);
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    System.out.println("跳过字段解析不了的行，偏移量" + lineStart + "：" + e.getMessage());
+                    lineStart = i + 1;
+                    continue;
+                }
+                handler.accept(lineStart, fields[0], fields[1], type, length, fields[4], callTime, null);
+            } else if (lineEnd > lineStart) {
+                System.out.println("跳过格式不对的行，偏移量" + lineStart);
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    /**
+     * 解析完整的长度前缀消息，最后一条不完整的消息不消费
+     * @param caller 主叫号码
+     * @return 消费的字节数
+     */
+    static int parseProtobuf(ByteBuffer buffer, String caller, RecordHandler handler) throws IOException {
+        int limit = buffer.limit();
+        int position = 0;
+        CallLogProtobufView view = new CallLogProtobufView();
+        while (position < limit) {
+            // varint长度
+            int length = 0;
+            int shift = 0;
+            int cursor = position;
+            boolean complete = false;
+            while (cursor < limit && shift < 32) {
+                byte b = buffer.get(cursor++);
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+                if (b >= 0) {
+                    complete = true;
+                    break;
+                }
+            }
+            if (!complete) {
+                if (shift >= 32) {
+                    throw new IOException("偏移量" + position + "处的消息长度无效");
+                }
+                break;
+            }
+            if (length < 0 || cursor + length > limit) {
+                break;
+            }
+            byte[] message = new byte[length];
+            for (int i = 0; i < length; i++) {
+                message[i] = buffer.get(cursor + i);
+            }
+            view.wrap(message, 0, length);
+            String date = view.getDate();
+            long callTime;
+            try {
+                callTime = parseCallTime(date);
+            } catch (DateTimeParseException e) {
+                System.out.println("跳过日期解析不了的消息，偏移量" + position + "：" + e.getMessage());
+                position = cursor + length;
+                continue;
+            }
+            handler.accept(position, caller, view.getDnum(), view.getType(), view.getLength(), date, callTime, message);
+            position = cursor + length;
+        }
+        return position;
+    }
+
+    private static String ascii(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+
+    public long getIngestedRecords() {
+        return ingestedRecords;
+    }
+
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * 通知run在提交最后一批后返回
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对方号码(dnum)的二级索引
+ * 主表rowkey以主叫号码开头，"谁在最近一周给199xxxxxxxx打过电话"只能全表扫描。
+ * 索引表rowkey为 dnum_反转时间戳#序号_主叫号码，按时间倒序排列，idx:rk列保存主表的rowkey（加盐表为加盐后的rowkey），
+ * 查询时先扫索引表的一小段，再批量get主表
+ */
+public class CallLogDnumIndex {
+    // 索引表名
+    public static final TableName INDEX_TABLE = TableName.valueOf("calllog:calllog_dnum");
+    static final byte[] FAMILY = Bytes.toBytes("idx");
+    static final byte[] ROWKEY = Bytes.toBytes("rk");
+    // 每批get主表的行数
+    private static final int GET_BATCH = 100;
+
+    private final Table primary;
+    private final Table index;
+
+    public CallLogDnumIndex(Table primary, Table index) {
+        this.primary = primary;
+        this.index = index;
+    }
+
+    /**
+     * 创建索引表
+     */
+    public static void createIndexTable(Admin admin) throws IOException {
+        if (admin.tableExists(INDEX_TABLE)) {
+            System.out.println("索引表已存在");
+            return;
+        }
+        admin.createTable(TableDescriptorBuilder.newBuilder(INDEX_TABLE)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+                .build());
+    }
+
+    /**
+     * 索引rowkey：dnum_反转时间戳#序号_主叫号码，序号保证同一时刻打给同一号码的多条记录索引不相互覆盖
+     * @param primaryRowkey 主表rowkey 主叫号码_反转时间戳#序号（早期的rowkey没有序号），允许带盐前缀
+     * @return 主表rowkey格式不对时返回null
+     */
+    public static String indexRowKey(String dnum, String primaryRowkey) {
+        int last = primaryRowkey.lastIndexOf('_');
+        if (last <= 0) {
+            return null;
+        }
+        int phoneStart = primaryRowkey.lastIndexOf('_', last - 1) + 1;
+        return dnum + "_" + primaryRowkey.substring(last + 1) + "_" + primaryRowkey.substring(phoneStart, last);
+    }
+
+    /**
+     * 与主表Put一起写入的索引Put
+     * @param storedRowkey 主表中实际存储的rowkey
+     */
+    public static Put createIndexPut(String dnum, byte[] storedRowkey) {
+        String indexRowKey = indexRowKey(dnum, Bytes.toString(storedRowkey));
+        if (indexRowKey == null) {
+            return null;
+        }
+        Put put = new Put(Bytes.toBytes(indexRowKey));
+        put.addColumn(FAMILY, ROWKEY, storedRowkey);
+        return put;
+    }
+
+    /**
+     * 查询[from, to)时间段内打给dnum的通话记录，按时间倒序
+     * @param from 毫秒时间戳
+     * @param to 毫秒时间戳
+     */
+    public List<Result> findCalls(String dnum, long from, long to) throws IOException {
+        Scan scan = new Scan();
+        scan.withStartRow(Bytes.toBytes(dnum + "_" + (Long.MAX_VALUE - to + 1)));
+        scan.withStopRow(Bytes.toBytes(dnum + "_" + (Long.MAX_VALUE - from + 1)));
+        scan.addColumn(FAMILY, ROWKEY);
+        scan.setCaching(GET_BATCH);
+
+        List<Result> results = new ArrayList<>();
+        List<Get> gets = new ArrayList<>(GET_BATCH);
+        try (ResultScanner scanner = index.getScanner(scan)) {
+            for (Result result : scanner) {
+                gets.add(new Get(result.getValue(FAMILY, ROWKEY)));
+                if (gets.size() == GET_BATCH) {
+                    addAll(results, primary.get(gets));
+                    gets.clear();
+                }
+            }
+        }
+        if (!gets.isEmpty()) {
+            addAll(results, primary.get(gets));
+        }
+        return results;
+    }
+
+    /**
+     * 主表记录已删除但索引还在时，get返回空结果，跳过
+     */
+    private static void addAll(List<Result> results, Result[] batch) {
+        for (Result result : batch) {
+            if (!result.isEmpty()) {
+                results.add(result);
+            }
+        }
+    }
+}
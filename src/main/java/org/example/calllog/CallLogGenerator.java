@@ -0,0 +1,252 @@
+package org.example.calllog;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可配置、可并行的通话记录生成器
+ * 每个用户的数据只由seed和用户序号决定（每个用户一个SplittableRandom），与线程数和调度顺序无关，同一个seed总是生成相同的数据集。
+ * 主叫号码、被叫号码由序号映射得到，互不重复；callerSkew大于0时各用户的记录数服从Zipf分布（序号0最多），
+ * calleeSkew大于0时被叫号码按Zipf分布从被叫号码池中选取。
+ * 生成的记录直接交给Sink，Sink会被多个线程同时调用，必须线程安全（例如CallLogIngestPipeline.submit）
+ *
+ * 用法：new CallLogGenerator(42).users(1000).years(2023, 2024).recordsPerUser(10000).callerSkew(1.0).generate(sink)
+ */
+public class CallLogGenerator {
+    // 号码的后8位由序号乘以与10^8互质的数得到，保证不同序号的号码不同
+    private static final long PHONE_RANGE = 100000000L;
+    private static final long CALLER_MULTIPLIER = 48271L;
+    private static final long CALLEE_MULTIPLIER = 69621L;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * 接收生成的记录
+     */
+    public interface Sink {
+        /**
+         * @param user 用户序号
+         * @param sequence 该用户的第几条记录，同一用户内唯一
+         * @param callTime 通话时间，毫秒时间戳，精确到秒
+         */
+        void accept(int user, int sequence, String phoneNumber, String dnum, int type, int length, long callTime)
+                throws IOException;
+    }
+
+    private final long seed;
+    private int users = 10;
+    private int fromYear = 2024;
+    private int toYear = 2024;
+    private int recordsPerUser = 10000;
+    private double callerSkew;
+    private double calleeSkew;
+    private int callees = 100000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public CallLogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public CallLogGenerator users(int users) {
+        this.users = users;
+        return this;
+    }
+
+    /**
+     * 通话时间在[fromYear年1月1日, toYear+1年1月1日)内均匀分布
+     */
+    public CallLogGenerator years(int fromYear, int toYear) {
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        return this;
+    }
+
+    /**
+     * 平均每个用户的记录数，总记录数为users * recordsPerUser
+     */
+    public CallLogGenerator recordsPerUser(int recordsPerUser) {
+        this.recordsPerUser = recordsPerUser;
+        return this;
+    }
+
+    /**
+     * 主叫的Zipf指数，0表示每个用户记录数相同
+     */
+    public CallLogGenerator callerSkew(double callerSkew) {
+        this.callerSkew = callerSkew;
+        return this;
+    }
+
+    /**
+     * 被叫的Zipf指数和被叫号码池大小，0表示在池中均匀选取
+     */
+    public CallLogGenerator calleeSkew(double calleeSkew, int callees) {
+        this.calleeSkew = calleeSkew;
+        this.callees = callees;
+        return this;
+    }
+
+    public CallLogGenerator threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * 第user个用户的主叫号码
+     */
+    public String getPhoneNumber(int user) {
+        return phoneNumber("186", user, CALLER_MULTIPLIER);
+    }
+
+    /**
+     * 各用户的记录数，按Zipf权重取整后把余数分给排名靠前的用户，总和恰好为users * recordsPerUser
+     */
+    public int[] getRecordCounts() {
+        long total = (long) users * recordsPerUser;
+        int[] counts = new int[users];
+        if (callerSkew <= 0) {
+            Arrays.fill(counts, recordsPerUser);
+            return counts;
+        }
+        double[] weights = zipfWeights(users, callerSkew);
+        long assigned = 0;
+        for (int i = 0; i < users; i++) {
+            counts[i] = (int) (total * weights[i]);
+            assigned += counts[i];
+        }
+        for (int i = 0; assigned < total; i = (i + 1) % users) {
+            counts[i]++;
+            assigned++;
+        }
+        return counts;
+    }
+
+    /**
+     * 用threads个线程生成全部记录，任一线程失败时其余线程尽快停止
+     * @return 生成的记录数
+     */
+    public long generate(Sink sink) throws IOException {
+        int[] counts = getRecordCounts();
+        // 被叫号码的累积分布，所有线程共享只读
+        double[] calleeCdf = calleeSkew > 0 ? cumulative(zipfWeights(callees, calleeSkew)) : null;
+        long fromMillis = yearStart(fromYear);
+        long rangeSeconds = (yearStart(toYear + 1) - fromMillis) / 1000;
+        AtomicInteger nextUser = new AtomicInteger();
+        AtomicLong generated = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "calllog-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int w = 0; w < threads; w++) {
+                workers[w] = executor.submit(() -> {
+                    // 按用户领取任务，热点用户记录多也不会拖慢其他线程
+                    int user;
+                    while ((user = nextUser.getAndIncrement()) < users) {
+                        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + user);
+                        String phoneNumber = getPhoneNumber(user);
+                        try {
+                            for (int j = 0; j < counts[user]; j++) {
+                                int callee = calleeCdf == null ? random.nextInt(callees)
+                                        : sample(calleeCdf, random.nextDouble());
+                                long callTime = fromMillis + random.nextLong(rangeSeconds) * 1000;
+                                sink.accept(user, j, phoneNumber, phoneNumber("199", callee, CALLEE_MULTIPLIER),
+                                        random.nextInt(2), random.nextInt(200) + 1, callTime);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            // 让其余线程不再领取新用户
+                            nextUser.set(users);
+                            throw e;
+                        }
+                        generated.addAndGet(counts[user]);
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("生成被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("生成失败", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return generated.get();
+    }
+
+    /**
+     * 与CallLogDemo中date列相同的格式，线程安全
+     */
+    public static String formatDate(long callTime) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(callTime));
+    }
+
+    private static String phoneNumber(String prefix, int index, long multiplier) {
+        long suffix = (index * multiplier) % PHONE_RANGE;
+        StringBuilder phoneNumber = new StringBuilder(11).append(prefix);
+        // 补齐8位
+        for (long digit = PHONE_RANGE / 10; digit > suffix && digit > 1; digit /= 10) {
+            phoneNumber.append('0');
+        }
+        return phoneNumber.append(suffix).toString();
+    }
+
+    private static long yearStart(int year) {
+        return LocalDate.of(year, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 排名k（从0开始）的权重正比于1/(k+1)^s，总和为1
+     */
+    static double[] zipfWeights(int n, double s) {
+        double[] weights = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            weights[k] = 1 / Math.pow(k + 1, s);
+            sum += weights[k];
+        }
+        for (int k = 0; k < n; k++) {
+            weights[k] /= sum;
+        }
+        return weights;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * 在累积分布上二分查找第一个不小于u的位置
+     */
+    private static int sample(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cdf.length - 1);
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.calllog;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.IOException;
+
+/**
+ * 根据主表已有数据重建dnum索引
+ * 只有map阶段：每个region一个map任务，读出dnum后直接把索引Put写到索引表，没有reduce
+ * 用法：CallLogIndexRebuildJob [主表名]，默认calllog:calllog
+ */
+public class CallLogIndexRebuildJob {
+
+    public static class IndexMapper extends TableMapper<ImmutableBytesWritable, Put> {
+        private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+        private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+
+        private final CallLogProtobufView view = new CallLogProtobufView();
+        private final ImmutableBytesWritable outputKey = new ImmutableBytesWritable();
+
+        @Override
+        protected void map(ImmutableBytesWritable key, Result value, Context context)
+                throws IOException, InterruptedException {
+            Cell dnumCell = value.getColumnLatestCell(CallLogRecord.FAMILY, DNUM);
+            if (dnumCell == null) {
+                context.getCounter("calllog", "missing dnum").increment(1);
+                return;
+            }
+            // 按列存储时dnum列就是号码，protobuf存储时没有type列，需要解码
+            String dnum = value.containsColumn(CallLogRecord.FAMILY, TYPE)
+                    ? Bytes.toString(dnumCell.getValueArray(), dnumCell.getValueOffset(), dnumCell.getValueLength())
+                    : view.wrap(dnumCell).getDnum();
+            // insertBinaryRowKeyData()写入的二进制rowkey（包括加盐的）不建索引
+            Put put = CallLogRowKey.offsetOf(value.getRow()) >= 0 ? null
+                    : CallLogDnumIndex.createIndexPut(dnum, value.getRow());
+            if (put == null) {
+                context.getCounter("calllog", "unsupported rowkey").increment(1);
+                return;
+            }
+            outputKey.set(put.getRow());
+            context.write(outputKey, put);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = HBaseConfiguration.create();
+        // 本地运行
+        conf.set("mapreduce.framework.name", "local");
+        // 设置hbase运行的zk集群
+        conf.set("hbase.zookeeper.quorum", "node2,node3,node4");
+        System.setProperty("HADOOP_USER_NAME", "root");
+
+        String primaryTable = args.length > 0 ? args[0] : "calllog:calllog";
+        Job job = Job.getInstance(conf, "calllog_dnum_index_rebuild");
+        job.setJarByClass(CallLogIndexRebuildJob.class);
+
+        Scan scan = new Scan();
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.DNUM.getQualifier());
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.TYPE.getQualifier());
+        scan.setCaching(1000);
+        // 全表扫描的数据块不进缓存，避免挤掉在线查询的热点数据
+        scan.setCacheBlocks(false);
+
+        TableMapReduceUtil.initTableMapperJob(primaryTable, scan, IndexMapper.class,
+                ImmutableBytesWritable.class, Put.class, job);
+        TableMapReduceUtil.initTableReducerJob(CallLogDnumIndex.INDEX_TABLE.getNameAsString(), null, job);
+        job.setNumReduceTasks(0);
+
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
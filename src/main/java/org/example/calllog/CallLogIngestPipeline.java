@@ -0,0 +1,182 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于BufferedMutator的流式写入管道
+ * 生产者把Put放进有界队列，队列满时submit阻塞（背压），后台写线程把Put交给BufferedMutator，
+ * 写缓冲达到writeBufferSize时由BufferedMutator自己异步提交，写线程只在距上次刷写超过flushIntervalMs时刷写一次，
+ * 刷写返回后之前交给它的记录都已写入或已计入失败，写入条数在这时确认。
+ * 数据生成与RPC并行进行，内存占用只取决于队列容量和写缓冲大小，与数据总量无关
+ */
+public class CallLogIngestPipeline implements Closeable {
+    private final BlockingQueue<Put> queue;
+    private final BufferedMutator mutator;
+    private final long flushIntervalMs;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // 队列中等待写入的字节数
+    private final AtomicLong queuedBytes = new AtomicLong();
+    // 已交给BufferedMutator、尚未被刷写确认的字节数
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong submittedRecords = new AtomicLong();
+    // 刷写确认写入成功的记录数
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    // 写线程的定时刷写次数，不含BufferedMutator按大小触发的提交
+    private final AtomicLong flushes = new AtomicLong();
+    // 第一个异常，close时抛出
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+
+    /**
+     * @param queueCapacity 生产者队列容量
+     * @param writeBufferSize 写缓冲大小（字节）
+     * @param flushIntervalMs 最长刷写间隔（毫秒）
+     */
+    public CallLogIngestPipeline(Connection connection, TableName tableName, int queueCapacity,
+                                 long writeBufferSize, long flushIntervalMs) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushIntervalMs = flushIntervalMs;
+        BufferedMutatorParams params = new BufferedMutatorParams(tableName)
+                .writeBufferSize(writeBufferSize)
+                // 异步写失败时回调，不会在mutate/flush中抛出
+                .listener((e, m) -> {
+                    failedRecords.addAndGet(e.getNumExceptions());
+                    firstError.compareAndSet(null, e);
+                    System.out.println("写入失败" + e.getNumExceptions() + "条：" + e.getMessage());
+                });
+        this.mutator = connection.getBufferedMutator(params);
+        this.writerThread = new Thread(this::writeLoop, "calllog-ingest-" + tableName.getNameAsString());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一条记录，队列满时阻塞
+     */
+    public void submit(Put put) throws IOException {
+        if (closed) {
+            throw new IOException("写入管道已关闭");
+        }
+        long size = put.heapSize();
+        queuedBytes.addAndGet(size);
+        try {
+            // 写线程异常退出后不再阻塞生产者
+            while (!queue.offer(put, 100, TimeUnit.MILLISECONDS)) {
+                if (!writerThread.isAlive()) {
+                    queuedBytes.addAndGet(-size);
+                    throw new IOException("写线程已退出", firstError.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            queuedBytes.addAndGet(-size);
+            Thread.currentThread().interrupt();
+            throw new IOException("提交被中断", e);
+        }
+        submittedRecords.incrementAndGet();
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.currentTimeMillis();
+        // 交给BufferedMutator的记录数
+        long mutated = 0;
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Put put = queue.poll(Math.max(1, flushIntervalMs), TimeUnit.MILLISECONDS);
+                if (put != null) {
+                    long size = put.heapSize();
+                    queuedBytes.addAndGet(-size);
+                    // 写缓冲满时mutate在后台提交，不阻塞写线程
+                    mutator.mutate(put);
+                    bufferedBytes.addAndGet(size);
+                    mutated++;
+                }
+                long now = System.currentTimeMillis();
+                if (bufferedBytes.get() > 0 && now - lastFlush >= flushIntervalMs) {
+                    flush(mutated);
+                    lastFlush = now;
+                }
+            }
+            flush(mutated);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            firstError.compareAndSet(null, e);
+        } catch (IOException e) {
+            firstError.compareAndSet(null, e);
+            System.out.println("写线程异常退出：" + e.getMessage());
+        }
+    }
+
+    /**
+     * flush等待所有已提交的写入完成，失败的记录已由listener计入failedRecords，其余的都已写入
+     * @param mutated 到目前为止交给BufferedMutator的记录数
+     */
+    private void flush(long mutated) throws IOException {
+        mutator.flush();
+        writtenRecords.set(mutated - failedRecords.get());
+        bufferedBytes.set(0);
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * 正在途中（队列中加写缓冲中）的字节数
+     */
+    public long getInFlightBytes() {
+        return queuedBytes.get() + bufferedBytes.get();
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public long getSubmittedRecords() {
+        return submittedRecords.get();
+    }
+
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    public long getFailedRecords() {
+        return failedRecords.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * 等待队列写完并刷写，任何写失败都会在这里以IOException抛出
+     * 调用前所有生产者必须已经结束submit
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待写线程结束被中断", e);
+        } finally {
+            mutator.close();
+        }
+        Exception error = firstError.get();
+        if (error != null) {
+            throw new IOException("写入失败" + failedRecords.get() + "条", error);
+        }
+    }
+}
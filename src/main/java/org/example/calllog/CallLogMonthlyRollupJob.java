@@ -0,0 +1,275 @@
+package org.example.calllog;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.mapreduce.TableReducer;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按用户、按月汇总通话记录，结果写入汇总表
+ * 每个region一个map任务并行扫描主表，同时支持按列存储和protobuf存储、字符串和二进制rowkey；
+ * map内先按(用户, 月)聚合，combiner再合并，reduce把每个用户每个月写成汇总表的一行。
+ * 汇总表rowkey为 手机号_yyyyMM，m列族下：calls 通话次数、total_length 总时长、avg_length 平均时长(double)、
+ * outbound 呼出次数、inbound 呼入次数，除avg_length外都是long。看板查某用户一年的数据只需扫12行
+ * 用法：CallLogMonthlyRollupJob [主表名] [reducer数]，默认calllog:calllog、1个reducer
+ */
+public class CallLogMonthlyRollupJob {
+    // 汇总表名
+    public static final TableName ROLLUP_TABLE = TableName.valueOf("calllog:calllog_monthly");
+    public static final byte[] FAMILY = Bytes.toBytes("m");
+    public static final byte[] CALLS = Bytes.toBytes("calls");
+    public static final byte[] TOTAL_LENGTH = Bytes.toBytes("total_length");
+    public static final byte[] AVG_LENGTH = Bytes.toBytes("avg_length");
+    public static final byte[] OUTBOUND = Bytes.toBytes("outbound");
+    public static final byte[] INBOUND = Bytes.toBytes("inbound");
+
+    /**
+     * 创建汇总表
+     */
+    public static void createRollupTable(Admin admin) throws IOException {
+        if (admin.tableExists(ROLLUP_TABLE)) {
+            System.out.println("汇总表已存在");
+            return;
+        }
+        admin.createTable(TableDescriptorBuilder.newBuilder(ROLLUP_TABLE)
+                .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+                .build());
+    }
+
+    /**
+     * 一个用户一个月的汇总值，可以相加
+     */
+    public static class Rollup implements Writable {
+        private long calls;
+        private long totalLength;
+        private long outbound;
+        private long inbound;
+
+        public void add(int type, int length) {
+            calls++;
+            totalLength += length;
+            // type 0 呼出 1呼入
+            if (type == 0) {
+                outbound++;
+            } else {
+                inbound++;
+            }
+        }
+
+        public void add(Rollup other) {
+            calls += other.calls;
+            totalLength += other.totalLength;
+            outbound += other.outbound;
+            inbound += other.inbound;
+        }
+
+        public void clear() {
+            calls = 0;
+            totalLength = 0;
+            outbound = 0;
+            inbound = 0;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getTotalLength() {
+            return totalLength;
+        }
+
+        public double getAvgLength() {
+            return calls == 0 ? 0 : (double) totalLength / calls;
+        }
+
+        public long getOutbound() {
+            return outbound;
+        }
+
+        public long getInbound() {
+            return inbound;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            WritableUtils.writeVLong(out, calls);
+            WritableUtils.writeVLong(out, totalLength);
+            WritableUtils.writeVLong(out, outbound);
+            WritableUtils.writeVLong(out, inbound);
+        }
+
+        @Override
+        public void readFields(DataInput in) throws IOException {
+            calls = WritableUtils.readVLong(in);
+            totalLength = WritableUtils.readVLong(in);
+            outbound = WritableUtils.readVLong(in);
+            inbound = WritableUtils.readVLong(in);
+        }
+    }
+
+    /**
+     * 汇总表rowkey 手机号_yyyyMM
+     * @param storedRowkey 主表中实际存储的rowkey，字符串rowkey允许带盐前缀
+     * @param date 通话时间 yyyy-MM-dd HH:mm:ss
+     * @return rowkey格式不对时返回null
+     */
+    static String rollupRowKey(byte[] storedRowkey, String date) {
+        String phoneNumber;
+        int binaryOffset = CallLogRowKey.offsetOf(storedRowkey);
+        if (binaryOffset >= 0) {
+            phoneNumber = String.valueOf(CallLogRowKey.getPhoneNumber(storedRowkey, binaryOffset));
+        } else {
+            String rowkey = Bytes.toString(storedRowkey);
+            int last = rowkey.lastIndexOf('_');
+            if (last <= 0) {
+                return null;
+            }
+            phoneNumber = rowkey.substring(rowkey.lastIndexOf('_', last - 1) + 1, last);
+        }
+        return phoneNumber + "_" + date.substring(0, 4) + date.substring(5, 7);
+    }
+
+    public static class RollupMapper extends TableMapper<Text, Rollup> {
+        private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+        private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+        // map内聚合的最大key数，超过后先输出
+        private static final int MAX_KEYS = 10000;
+
+        private final CallLogView view = new CallLogView();
+        private final CallLogProtobufView protobufView = new CallLogProtobufView();
+        private final Map<String, Rollup> rollups = new HashMap<>();
+        private final Text outputKey = new Text();
+
+        @Override
+        protected void map(ImmutableBytesWritable key, Result value, Context context)
+                throws IOException, InterruptedException {
+            int type;
+            int length;
+            String date;
+            // 按列存储时有type列，protobuf存储时整条记录在dnum列里
+            if (value.containsColumn(CallLogRecord.FAMILY, TYPE)) {
+                view.wrap(value);
+                if (!view.hasLength() || !view.hasDate()) {
+                    context.getCounter("calllog", "incomplete record").increment(1);
+                    return;
+                }
+                type = view.getType();
+                length = view.getLength();
+                date = view.getDate();
+            } else {
+                Cell cell = value.getColumnLatestCell(CallLogRecord.FAMILY, DNUM);
+                if (cell == null) {
+                    context.getCounter("calllog", "incomplete record").increment(1);
+                    return;
+                }
+                protobufView.wrap(cell);
+                type = protobufView.getType();
+                length = protobufView.getLength();
+                date = protobufView.getDate();
+            }
+            String rowKey = rollupRowKey(value.getRow(), date);
+            if (rowKey == null) {
+                context.getCounter("calllog", "unsupported rowkey").increment(1);
+                return;
+            }
+            rollups.computeIfAbsent(rowKey, k -> new Rollup()).add(type, length);
+            if (rollups.size() >= MAX_KEYS) {
+                flush(context);
+            }
+        }
+
+        private void flush(Context context) throws IOException, InterruptedException {
+            for (Map.Entry<String, Rollup> entry : rollups.entrySet()) {
+                outputKey.set(entry.getKey());
+                context.write(outputKey, entry.getValue());
+            }
+            rollups.clear();
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            flush(context);
+        }
+    }
+
+    public static class RollupCombiner extends Reducer<Text, Rollup, Text, Rollup> {
+        private final Rollup sum = new Rollup();
+
+        @Override
+        protected void reduce(Text key, Iterable<Rollup> values, Context context)
+                throws IOException, InterruptedException {
+            sum.clear();
+            for (Rollup value : values) {
+                sum.add(value);
+            }
+            context.write(key, sum);
+        }
+    }
+
+    public static class RollupReducer extends TableReducer<Text, Rollup, ImmutableBytesWritable> {
+        private final Rollup sum = new Rollup();
+
+        @Override
+        protected void reduce(Text key, Iterable<Rollup> values, Context context)
+                throws IOException, InterruptedException {
+            sum.clear();
+            for (Rollup value : values) {
+                sum.add(value);
+            }
+            Put put = new Put(key.copyBytes());
+            put.addColumn(FAMILY, CALLS, Bytes.toBytes(sum.getCalls()));
+            put.addColumn(FAMILY, TOTAL_LENGTH, Bytes.toBytes(sum.getTotalLength()));
+            put.addColumn(FAMILY, AVG_LENGTH, Bytes.toBytes(sum.getAvgLength()));
+            put.addColumn(FAMILY, OUTBOUND, Bytes.toBytes(sum.getOutbound()));
+            put.addColumn(FAMILY, INBOUND, Bytes.toBytes(sum.getInbound()));
+            context.write(null, put);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = HBaseConfiguration.create();
+        // 本地运行
+        conf.set("mapreduce.framework.name", "local");
+        // 设置hbase运行的zk集群
+        conf.set("hbase.zookeeper.quorum", "node2,node3,node4");
+        System.setProperty("HADOOP_USER_NAME", "root");
+
+        String primaryTable = args.length > 0 ? args[0] : "calllog:calllog";
+        Job job = Job.getInstance(conf, "calllog_monthly_rollup");
+        job.setJarByClass(CallLogMonthlyRollupJob.class);
+
+        Scan scan = new Scan();
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.DNUM.getQualifier());
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.TYPE.getQualifier());
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.LENGTH.getQualifier());
+        scan.addColumn(CallLogRecord.FAMILY, CallLogQuery.Field.DATE.getQualifier());
+        scan.setCaching(1000);
+        // 全表扫描的数据块不进缓存，避免挤掉在线查询的热点数据
+        scan.setCacheBlocks(false);
+
+        TableMapReduceUtil.initTableMapperJob(primaryTable, scan, RollupMapper.class,
+                Text.class, Rollup.class, job);
+        job.setCombinerClass(RollupCombiner.class);
+        TableMapReduceUtil.initTableReducerJob(ROLLUP_TABLE.getNameAsString(), RollupReducer.class, job);
+        job.setNumReduceTasks(args.length > 1 ? Integer.parseInt(args[1]) : 1);
+
+        System.exit(job.waitForCompletion(true) ? 0 : 1);
+    }
+}
@@ -0,0 +1,211 @@
+package org.example.calllog;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.exceptions.DeserializationException;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * protobuf格式通话记录的服务端过滤器
+ * insertProtocolBuffer()把整条记录序列化在basic:dnum一个单元格里，SingleColumnValueFilter无法按type等字段过滤。
+ * 这个过滤器在region server上用CallLogProtobufView解码单元格，按 type相等、length范围、date范围 判断，
+ * 只有满足条件的行才会返回给客户端；没有protobuf单元格的行会被过滤掉
+ * 部署：把本项目的jar放到region server的classpath或hbase.dynamic.jars.dir（默认 ${hbase.rootdir}/lib）下
+ */
+public class CallLogProtobufFilter extends FilterBase {
+    // 序列化时的字段号
+    private static final int FAMILY_FIELD = 1;
+    private static final int QUALIFIER_FIELD = 2;
+    private static final int TYPE_FIELD = 3;
+    private static final int MIN_LENGTH_FIELD = 4;
+    private static final int MAX_LENGTH_FIELD = 5;
+    private static final int DATE_FROM_FIELD = 6;
+    private static final int DATE_TO_FIELD = 7;
+
+    private final byte[] family;
+    private final byte[] qualifier;
+    // 为null表示不按该条件过滤
+    private Integer type;
+    private Integer minLength;
+    private Integer maxLength;
+    private byte[] dateFrom;
+    private byte[] dateTo;
+
+    private final transient CallLogProtobufView view = new CallLogProtobufView();
+    // 当前行是否满足条件
+    private transient boolean matched;
+
+    /**
+     * 过滤insertProtocolBuffer()写入的basic:dnum单元格
+     */
+    public CallLogProtobufFilter() {
+        this(Bytes.toBytes("basic"), Bytes.toBytes("dnum"));
+    }
+
+    public CallLogProtobufFilter(byte[] family, byte[] qualifier) {
+        this.family = family;
+        this.qualifier = qualifier;
+    }
+
+    /**
+     * type等于给定值
+     */
+    public CallLogProtobufFilter typeEquals(int type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * length在[min, max]之间
+     */
+    public CallLogProtobufFilter lengthBetween(int min, int max) {
+        this.minLength = min;
+        this.maxLength = max;
+        return this;
+    }
+
+    /**
+     * date在[from, to)之间，格式 yyyy-MM-dd HH:mm:ss，任一端为null表示不限
+     */
+    public CallLogProtobufFilter dateBetween(String from, String to) {
+        this.dateFrom = from == null ? null : Bytes.toBytes(from);
+        this.dateTo = to == null ? null : Bytes.toBytes(to);
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        matched = false;
+    }
+
+    @Override
+    public ReturnCode filterCell(Cell cell) throws IOException {
+        if (CellUtil.matchingFamily(cell, family) && CellUtil.matchingQualifier(cell, qualifier)) {
+            matched = matches(view.wrap(cell));
+        }
+        return ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public boolean hasFilterRow() {
+        return true;
+    }
+
+    @Override
+    public boolean filterRow() {
+        // 返回true表示过滤掉该行
+        return !matched;
+    }
+
+    private boolean matches(CallLogProtobufView callLog) throws IOException {
+        if (type != null && callLog.getType() != type) {
+            return false;
+        }
+        if (minLength != null && (callLog.getLength() < minLength || callLog.getLength() > maxLength)) {
+            return false;
+        }
+        if (dateFrom != null && callLog.compareDate(dateFrom) < 0) {
+            return false;
+        }
+        return dateTo == null || callLog.compareDate(dateTo) < 0;
+    }
+
+    /**
+     * 按protobuf编码序列化，region server通过parseFrom还原
+     */
+    @Override
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        output.writeBytes(FAMILY_FIELD, ByteString.copyFrom(family));
+        output.writeBytes(QUALIFIER_FIELD, ByteString.copyFrom(qualifier));
+        if (type != null) {
+            output.writeInt32(TYPE_FIELD, type);
+        }
+        if (minLength != null) {
+            output.writeInt32(MIN_LENGTH_FIELD, minLength);
+            output.writeInt32(MAX_LENGTH_FIELD, maxLength);
+        }
+        if (dateFrom != null) {
+            output.writeBytes(DATE_FROM_FIELD, ByteString.copyFrom(dateFrom));
+        }
+        if (dateTo != null) {
+            output.writeBytes(DATE_TO_FIELD, ByteString.copyFrom(dateTo));
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * region server通过反射调用，方法签名不能改
+     */
+    public static CallLogProtobufFilter parseFrom(byte[] bytes) throws DeserializationException {
+        byte[] family = null;
+        byte[] qualifier = null;
+        Integer type = null;
+        Integer minLength = null;
+        Integer maxLength = null;
+        byte[] dateFrom = null;
+        byte[] dateTo = null;
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(bytes);
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case FAMILY_FIELD:
+                        family = input.readBytes().toByteArray();
+                        break;
+                    case QUALIFIER_FIELD:
+                        qualifier = input.readBytes().toByteArray();
+                        break;
+                    case TYPE_FIELD:
+                        type = input.readInt32();
+                        break;
+                    case MIN_LENGTH_FIELD:
+                        minLength = input.readInt32();
+                        break;
+                    case MAX_LENGTH_FIELD:
+                        maxLength = input.readInt32();
+                        break;
+                    case DATE_FROM_FIELD:
+                        dateFrom = input.readBytes().toByteArray();
+                        break;
+                    case DATE_TO_FIELD:
+                        dateTo = input.readBytes().toByteArray();
+                        break;
+                    default:
+                        input.skipField(tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new DeserializationException(e);
+        }
+        if (family == null || qualifier == null) {
+            throw new DeserializationException("缺少列族或列名");
+        }
+        CallLogProtobufFilter filter = new CallLogProtobufFilter(family, qualifier);
+        filter.type = type;
+        filter.minLength = minLength;
+        filter.maxLength = minLength == null ? null : maxLength;
+        filter.dateFrom = dateFrom;
+        filter.dateTo = dateTo;
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + Bytes.toString(family) + ":" + Bytes.toString(qualifier)
+                + (type == null ? "" : ", type=" + type)
+                + (minLength == null ? "" : ", length=[" + minLength + "," + maxLength + "]")
+                + (dateFrom == null ? "" : ", date>=" + Bytes.toString(dateFrom))
+                + (dateTo == null ? "" : ", date<" + Bytes.toString(dateTo));
+    }
+}
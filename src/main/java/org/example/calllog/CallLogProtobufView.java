@@ -0,0 +1,164 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+
+/**
+ * protobuf格式通话记录的惰性解码视图
+ * 直接在单元格的底层数组上用CodedInputStream按偏移和长度解码，不复制单元格的值；
+ * 访问某个字段时才向后解析到该字段为止，dnum、date只记录在数组中的位置，读取时才转成String。
+ * 只需要length、type的查询完全不会创建字符串
+ * 视图只在下一次wrap之前有效
+ */
+public class CallLogProtobufView {
+    private static final int LENGTH = CallLogOuterClass.CallLog.LENGTH_FIELD_NUMBER;
+    private static final int DNUM = CallLogOuterClass.CallLog.DNUM_FIELD_NUMBER;
+    private static final int TYPE = CallLogOuterClass.CallLog.TYPE_FIELD_NUMBER;
+    private static final int DATE = CallLogOuterClass.CallLog.DATE_FIELD_NUMBER;
+
+    private byte[] buffer;
+    private int offset;
+    private int limit;
+    // 首次访问字段时才创建
+    private CodedInputStream input;
+    // 已经解析到的字段，按字段号置位
+    private int parsed;
+    private boolean finished;
+
+    private int length;
+    private int type;
+    private int dnumOffset;
+    private int dnumLength;
+    private int dateOffset;
+    private int dateLength;
+
+    /**
+     * 指向单元格的值
+     */
+    public CallLogProtobufView wrap(Cell cell) {
+        return wrap(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+    }
+
+    /**
+     * 指向数组中的一段protobuf编码
+     */
+    public CallLogProtobufView wrap(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.limit = offset + length;
+        this.input = null;
+        this.parsed = 0;
+        this.finished = false;
+        // proto3缺省值
+        this.length = 0;
+        this.type = 0;
+        this.dnumOffset = offset;
+        this.dnumLength = 0;
+        this.dateOffset = offset;
+        this.dateLength = 0;
+        return this;
+    }
+
+    public int getLength() throws IOException {
+        parseTo(LENGTH);
+        return length;
+    }
+
+    public int getType() throws IOException {
+        parseTo(TYPE);
+        return type;
+    }
+
+    public String getDnum() throws IOException {
+        parseTo(DNUM);
+        return Bytes.toString(buffer, dnumOffset, dnumLength);
+    }
+
+    public String getDate() throws IOException {
+        parseTo(DATE);
+        return Bytes.toString(buffer, dateOffset, dateLength);
+    }
+
+    /**
+     * 与给定的UTF-8字节比较dnum，不创建字符串
+     */
+    public int compareDnum(byte[] other) throws IOException {
+        parseTo(DNUM);
+        return Bytes.compareTo(buffer, dnumOffset, dnumLength, other, 0, other.length);
+    }
+
+    /**
+     * 与给定的UTF-8字节比较date，yyyy-MM-dd HH:mm:ss格式下字节序就是时间先后
+     */
+    public int compareDate(byte[] other) throws IOException {
+        parseTo(DATE);
+        return Bytes.compareTo(buffer, dateOffset, dateLength, other, 0, other.length);
+    }
+
+    public StringBuilder appendDnum(StringBuilder builder) throws IOException {
+        parseTo(DNUM);
+        return appendUtf8(builder, dnumOffset, dnumLength);
+    }
+
+    public StringBuilder appendDate(StringBuilder builder) throws IOException {
+        parseTo(DATE);
+        return appendUtf8(builder, dateOffset, dateLength);
+    }
+
+    /**
+     * 从上次停下的位置继续解析，直到遇到目标字段或数据结束
+     */
+    private void parseTo(int field) throws IOException {
+        if (finished || (parsed & (1 << field)) != 0) {
+            return;
+        }
+        if (input == null) {
+            input = CodedInputStream.newInstance(buffer, offset, limit - offset);
+        }
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                finished = true;
+                return;
+            }
+            int number = WireFormat.getTagFieldNumber(tag);
+            int wireType = WireFormat.getTagWireType(tag);
+            if (number == LENGTH && wireType == WireFormat.WIRETYPE_VARINT) {
+                length = input.readInt32();
+            } else if (number == TYPE && wireType == WireFormat.WIRETYPE_VARINT) {
+                type = input.readInt32();
+            } else if (number == DNUM && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                dnumLength = input.readRawVarint32();
+                dnumOffset = offset + input.getTotalBytesRead();
+                input.skipRawBytes(dnumLength);
+            } else if (number == DATE && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                dateLength = input.readRawVarint32();
+                dateOffset = offset + input.getTotalBytesRead();
+                input.skipRawBytes(dateLength);
+            } else {
+                input.skipField(tag);
+                continue;
+            }
+            parsed |= 1 << number;
+            if (number == field) {
+                return;
+            }
+        }
+    }
+
+    private StringBuilder appendUtf8(StringBuilder builder, int start, int count) {
+        int end = start + count;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) {
+                return builder.append(Bytes.toString(buffer, i, end - i));
+            }
+            builder.append((char) buffer[i]);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,209 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * 通话记录查询构造器
+ * 把 用户 + 时间段 + 呼叫类型 + 需要的字段 编译成一个Scan：
+ * 只addColumn需要的列，按记录大小计算caching，设置maxResultSize和limit，减少RPC次数和传输的数据量
+ * <pre>
+ * CallLogQuery.forUser("18661990012")
+ *         .between("2024-03-01 00:00:00", "2024-04-01 00:00:00")
+ *         .type(0)
+ *         .select(CallLogQuery.Field.DNUM, CallLogQuery.Field.LENGTH)
+ *         .limit(100)
+ *         .toScan();
+ * </pre>
+ */
+public class CallLogQuery {
+    /**
+     * 可投影的字段，附带值的估计大小（字节）
+     */
+    public enum Field {
+        DNUM("dnum", 11),
+        TYPE("type", Bytes.SIZEOF_INT),
+        LENGTH("length", Bytes.SIZEOF_INT),
+        DATE("date", 19);
+
+        private final byte[] qualifier;
+        private final int valueSize;
+
+        Field(String qualifier, int valueSize) {
+            this.qualifier = Bytes.toBytes(qualifier);
+            this.valueSize = valueSize;
+        }
+
+        public byte[] getQualifier() {
+            return qualifier;
+        }
+    }
+
+    // 单元格除rowkey和值之外的开销：长度字段、列族、列名、时间戳、类型，按30字节估计
+    private static final int CELL_OVERHEAD = 30;
+    // 字符串rowkey的长度：11位手机号 + "_" + 19位反转时间戳 + "#" + 序号，序号按4位估计
+    private static final int ROWKEY_SIZE = 36;
+    // 单次RPC返回的最大字节数
+    private static final long DEFAULT_MAX_RESULT_SIZE = 2 * 1024 * 1024;
+    private static final int MIN_CACHING = 100;
+    private static final int MAX_CACHING = 10000;
+
+    private final String phoneNumber;
+    private String from;
+    private String to;
+    private Integer type;
+    private final EnumSet<Field> fields = EnumSet.noneOf(Field.class);
+    private int limit;
+    private int batch;
+    private long maxResultSize = DEFAULT_MAX_RESULT_SIZE;
+    private boolean cellTimestamps;
+
+    private CallLogQuery(String phoneNumber) {
+        this.phoneNumber = phoneNumber;
+    }
+
+    /**
+     * 查询某个用户的通话记录
+     */
+    public static CallLogQuery forUser(String phoneNumber) {
+        return new CallLogQuery(phoneNumber);
+    }
+
+    /**
+     * 时间段 [from, to)，格式 yyyy-MM-dd HH:mm:ss
+     */
+    public CallLogQuery between(String from, String to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * 呼叫类型 0 呼出 1 呼入
+     */
+    public CallLogQuery type(int type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * 需要返回的字段，不调用时返回全部字段
+     */
+    public CallLogQuery select(Field... fields) {
+        for (Field field : fields) {
+            this.fields.add(field);
+        }
+        return this;
+    }
+
+    /**
+     * 最多返回的记录数
+     */
+    public CallLogQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * 每个Result最多包含的单元格数，只在宽行时需要；与type过滤不能同时使用
+     */
+    public CallLogQuery batch(int batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    /**
+     * 单次RPC返回的最大字节数
+     */
+    public CallLogQuery maxResultSize(long maxResultSize) {
+        this.maxResultSize = maxResultSize;
+        return this;
+    }
+
+    /**
+     * 表的单元格时间戳是否为通话时间（CallLogDemo.createTable(..., true)建的表）
+     * 为true时按between的时间段设置Scan的时间范围，region server跳过时间戳范围与之不相交的HFile
+     */
+    public CallLogQuery cellTimestamps(boolean cellTimestamps) {
+        this.cellTimestamps = cellTimestamps;
+        return this;
+    }
+
+    /**
+     * 编译成Scan
+     */
+    public Scan toScan() throws ParseException, IOException {
+        Scan scan = new Scan();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        long fromTime = from == null ? 0 : format.parse(from).getTime();
+        long toTime = to == null ? Long.MAX_VALUE : format.parse(to).getTime();
+        // rowkey按 Long.MAX_VALUE - 时间戳 排序，时间越晚越靠前，所以用to作起始行
+        if (to != null) {
+            scan.withStartRow(Bytes.toBytes(CallLogDemo.startRowKey(phoneNumber, toTime)));
+        } else {
+            scan.withStartRow(Bytes.toBytes(phoneNumber + "_"));
+        }
+        if (from != null) {
+            scan.withStopRow(Bytes.toBytes(CallLogDemo.stopRowKey(phoneNumber, fromTime)));
+        } else {
+            scan.withStopRow(Bytes.toBytes(phoneNumber + "`"));
+        }
+        if (cellTimestamps && (from != null || to != null)) {
+            // 时间范围 [from, to)，与rowkey范围一致
+            scan.setTimeRange(fromTime, toTime);
+        }
+
+        EnumSet<Field> projection = fields.isEmpty() ? EnumSet.allOf(Field.class) : EnumSet.copyOf(fields);
+        if (type != null) {
+            // 值过滤器需要读到type列
+            projection.add(Field.TYPE);
+            SingleColumnValueFilter filter = new SingleColumnValueFilter(CallLogRecord.FAMILY,
+                    Field.TYPE.getQualifier(), CompareOperator.EQUAL, Bytes.toBytes(type));
+            filter.setFilterIfMissing(true);
+            scan.setFilter(filter);
+        }
+        int rowSize = 0;
+        for (Field field : projection) {
+            scan.addColumn(CallLogRecord.FAMILY, field.getQualifier());
+            rowSize += ROWKEY_SIZE + CELL_OVERHEAD + field.valueSize;
+        }
+
+        // 一次RPC尽量装满maxResultSize
+        int caching = (int) Math.min(MAX_CACHING, Math.max(MIN_CACHING, maxResultSize / rowSize));
+        if (limit > 0) {
+            caching = Math.min(caching, limit);
+            scan.setLimit(limit);
+        }
+        scan.setCaching(caching);
+        scan.setMaxResultSize(maxResultSize);
+        if (batch > 0) {
+            scan.setBatch(batch);
+        }
+        return scan;
+    }
+
+    /**
+     * 读取scanner中的全部结果并关闭
+     */
+    public static List<CallLogRecord> read(ResultScanner scanner) {
+        List<CallLogRecord> records = new ArrayList<>();
+        CallLogView view = new CallLogView();
+        try (ResultScanner resultScanner = scanner) {
+            for (Result result : resultScanner) {
+                records.add(CallLogRecord.fromView(view.wrap(result)));
+            }
+        }
+        return records;
+    }
+}
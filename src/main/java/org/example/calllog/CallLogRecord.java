@@ -0,0 +1,70 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * 一条通话记录
+ * 查询时没有投影的字段为null
+ */
+public class CallLogRecord {
+    static final byte[] FAMILY = Bytes.toBytes("basic");
+
+    private final String rowkey;
+    private final String dnum;
+    private final Integer type;
+    private final Integer length;
+    private final String date;
+
+    public CallLogRecord(String rowkey, String dnum, Integer type, Integer length, String date) {
+        this.rowkey = rowkey;
+        this.dnum = dnum;
+        this.type = type;
+        this.length = length;
+        this.date = date;
+    }
+
+    /**
+     * 按列名读取（按列存储的布局），不依赖单元格的位置
+     */
+    public static CallLogRecord fromResult(Result result) {
+        return fromView(new CallLogView().wrap(result));
+    }
+
+    /**
+     * 从视图中物化一条记录，扫描时可复用同一个视图
+     */
+    public static CallLogRecord fromView(CallLogView view) {
+        StringBuilder rowkey = new StringBuilder(32);
+        return new CallLogRecord(view.appendRowkey(rowkey).toString(),
+                view.hasDnum() ? view.getDnum() : null,
+                view.hasType() ? view.getType() : null,
+                view.hasLength() ? view.getLength() : null,
+                view.hasDate() ? view.getDate() : null);
+    }
+
+    public String getRowkey() {
+        return rowkey;
+    }
+
+    public String getDnum() {
+        return dnum;
+    }
+
+    public Integer getType() {
+        return type;
+    }
+
+    public Integer getLength() {
+        return length;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    @Override
+    public String toString() {
+        return "rowkey:" + rowkey + ",dnum:" + dnum + ",type:" + type + ",length:" + length + ",date:" + date;
+    }
+}
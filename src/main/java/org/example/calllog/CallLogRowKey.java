@@ -0,0 +1,103 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * 定长二进制rowkey编解码
+ * 布局：手机号(long 8字节) + Long.MAX_VALUE-通话时间(8字节) + 序号(无符号short 2字节)，共18字节
+ * 原来的字符串rowkey "手机号_反转时间戳" 约31字节，且每次读写都要用SimpleDateFormat解析时间。
+ * 两个long都是非负数，大端序编码后字节序与数值序一致：同一用户的记录连续存放、时间倒序，
+ * 扫描某段时间的起止rowkey可以直接算出来
+ */
+public final class CallLogRowKey {
+    // rowkey长度
+    public static final int LENGTH = 18;
+    // 序号的最大值，用于区分同一毫秒的多条通话
+    public static final int MAX_SEQUENCE = 0xFFFF;
+
+    private static final int PHONE_OFFSET = 0;
+    private static final int TIME_OFFSET = 8;
+    private static final int SEQUENCE_OFFSET = 16;
+
+    private CallLogRowKey() {
+    }
+
+    /**
+     * 编码到新数组
+     */
+    public static byte[] encode(long phoneNumber, long callTime, int sequence) {
+        byte[] rowkey = new byte[LENGTH];
+        encode(rowkey, 0, phoneNumber, callTime, sequence);
+        return rowkey;
+    }
+
+    /**
+     * 编码到调用方提供的数组，不分配内存
+     * @return 写入的字节数
+     */
+    public static int encode(byte[] dst, int offset, long phoneNumber, long callTime, int sequence) {
+        if (sequence < 0 || sequence > MAX_SEQUENCE) {
+            throw new IllegalArgumentException("序号超出范围：" + sequence);
+        }
+        Bytes.putLong(dst, offset + PHONE_OFFSET, phoneNumber);
+        Bytes.putLong(dst, offset + TIME_OFFSET, Long.MAX_VALUE - callTime);
+        Bytes.putShort(dst, offset + SEQUENCE_OFFSET, (short) sequence);
+        return LENGTH;
+    }
+
+    public static long getPhoneNumber(byte[] rowkey, int offset) {
+        return Bytes.toLong(rowkey, offset + PHONE_OFFSET);
+    }
+
+    public static long getCallTime(byte[] rowkey, int offset) {
+        return Long.MAX_VALUE - Bytes.toLong(rowkey, offset + TIME_OFFSET);
+    }
+
+    public static int getSequence(byte[] rowkey, int offset) {
+        return Bytes.toShort(rowkey, offset + SEQUENCE_OFFSET) & MAX_SEQUENCE;
+    }
+
+    /**
+     * 查询某用户[from, to)时间段的起始行（包含），时间倒序所以从to之前的最后一毫秒开始
+     */
+    public static byte[] startRow(long phoneNumber, long to) {
+        return encode(phoneNumber, to - 1, 0);
+    }
+
+    /**
+     * 查询某用户[from, to)时间段的结束行（不包含），from这一毫秒的所有序号都在它之前
+     */
+    public static byte[] stopRow(long phoneNumber, long from) {
+        return encode(phoneNumber, from - 1, 0);
+    }
+
+    /**
+     * 某用户全部记录的起始行（包含）
+     */
+    public static byte[] startRow(long phoneNumber) {
+        return Bytes.toBytes(phoneNumber);
+    }
+
+    /**
+     * 某用户全部记录的结束行（不包含）
+     */
+    public static byte[] stopRow(long phoneNumber) {
+        return Bytes.toBytes(phoneNumber + 1);
+    }
+
+    /**
+     * 表中存储的rowkey里二进制rowkey的起始位置：二进制rowkey为0，加盐后的 桶号_二进制rowkey 为盐前缀的长度；
+     * 字符串rowkey返回-1，字符串rowkey在这个位置的前一个字节是反转时间戳或序号，不是'_'
+     */
+    public static int offsetOf(byte[] storedRowkey) {
+        int offset = storedRowkey.length - LENGTH;
+        if (offset == 0 || (offset > 0 && storedRowkey[offset - 1] == '_')) {
+            return offset;
+        }
+        return -1;
+    }
+
+    public static String toString(byte[] rowkey, int offset) {
+        return getPhoneNumber(rowkey, offset) + "_" + getCallTime(rowkey, offset) + "_" + getSequence(rowkey, offset);
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * 通话记录的享元视图（按列存储的布局）
+ * wrap一个Result后直接从单元格的底层数组读取字段（getValueArray/getValueOffset/getValueLength），
+ * 不调用CellUtil.clone*复制字节数组。扫描时整个循环复用同一个视图，每行不再产生几十个临时数组
+ * 视图只在下一次wrap之前有效
+ */
+public class CallLogView {
+    private static final byte[] DNUM = CallLogQuery.Field.DNUM.getQualifier();
+    private static final byte[] TYPE = CallLogQuery.Field.TYPE.getQualifier();
+    private static final byte[] LENGTH = CallLogQuery.Field.LENGTH.getQualifier();
+    private static final byte[] DATE = CallLogQuery.Field.DATE.getQualifier();
+
+    private Cell row;
+    private Cell dnum;
+    private Cell type;
+    private Cell length;
+    private Cell date;
+
+    /**
+     * 指向一行新的结果，按列名定位单元格
+     */
+    public CallLogView wrap(Result result) {
+        row = null;
+        dnum = null;
+        type = null;
+        length = null;
+        date = null;
+        Cell[] cells = result.rawCells();
+        if (cells == null) {
+            return this;
+        }
+        for (Cell cell : cells) {
+            if (row == null) {
+                row = cell;
+            }
+            if (!CellUtil.matchingFamily(cell, CallLogRecord.FAMILY)) {
+                continue;
+            }
+            if (CellUtil.matchingQualifier(cell, DNUM)) {
+                dnum = cell;
+            } else if (CellUtil.matchingQualifier(cell, TYPE)) {
+                type = cell;
+            } else if (CellUtil.matchingQualifier(cell, LENGTH)) {
+                length = cell;
+            } else if (CellUtil.matchingQualifier(cell, DATE)) {
+                date = cell;
+            }
+        }
+        return this;
+    }
+
+    public boolean hasDnum() {
+        return dnum != null;
+    }
+
+    public boolean hasType() {
+        return type != null;
+    }
+
+    public boolean hasLength() {
+        return length != null;
+    }
+
+    public boolean hasDate() {
+        return date != null;
+    }
+
+    public int getType() {
+        return Bytes.toInt(type.getValueArray(), type.getValueOffset(), type.getValueLength());
+    }
+
+    public int getLength() {
+        return Bytes.toInt(length.getValueArray(), length.getValueOffset(), length.getValueLength());
+    }
+
+    public StringBuilder appendRowkey(StringBuilder builder) {
+        return appendAscii(builder, row.getRowArray(), row.getRowOffset(), row.getRowLength());
+    }
+
+    public StringBuilder appendDnum(StringBuilder builder) {
+        return appendAscii(builder, dnum.getValueArray(), dnum.getValueOffset(), dnum.getValueLength());
+    }
+
+    public StringBuilder appendDate(StringBuilder builder) {
+        return appendAscii(builder, date.getValueArray(), date.getValueOffset(), date.getValueLength());
+    }
+
+    public String getDnum() {
+        return Bytes.toString(dnum.getValueArray(), dnum.getValueOffset(), dnum.getValueLength());
+    }
+
+    public String getDate() {
+        return Bytes.toString(date.getValueArray(), date.getValueOffset(), date.getValueLength());
+    }
+
+    /**
+     * 把一行格式化为 rowkey:..,date:..,dnum:..,length:..,type:..，缺失的字段不输出
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        if (row == null) {
+            return builder;
+        }
+        appendRowkey(builder.append("rowkey:"));
+        if (hasDate()) {
+            appendDate(builder.append(",date:"));
+        }
+        if (hasDnum()) {
+            appendDnum(builder.append(",dnum:"));
+        }
+        if (hasLength()) {
+            builder.append(",length:").append(getLength());
+        }
+        if (hasType()) {
+            builder.append(",type:").append(getType());
+        }
+        return builder;
+    }
+
+    /**
+     * 手机号、日期、rowkey都是ASCII，逐字节追加；出现非ASCII字节时按UTF-8解码
+     */
+    private static StringBuilder appendAscii(StringBuilder builder, byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] < 0) {
+                return builder.append(Bytes.toString(bytes, i, end - i));
+            }
+            builder.append((char) bytes[i]);
+        }
+        return builder;
+    }
+}
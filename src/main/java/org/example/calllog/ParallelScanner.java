@@ -0,0 +1,239 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按region并行扫描
+ * 把一个Scan按RegionLocator给出的region边界切成多个子scan，放到有界线程池中并行执行，
+ * 结果通过有界队列流式返回给调用方：KEY按rowkey顺序返回，ARRIVAL按到达顺序返回（更快，但无序）
+ * 扫描的耗时随region server数量线性下降
+ */
+public class ParallelScanner implements Closeable {
+    /**
+     * 结果返回顺序
+     */
+    public enum Order {
+        // 按rowkey顺序，与单个scanner的结果一致
+        KEY,
+        // 按到达顺序
+        ARRIVAL
+    }
+
+    // 子scan结束标记，按引用比较，不会与真实结果混淆
+    private static final Result END = Result.create(new Cell[0]);
+    // 每个子scan的结果队列容量，限制在途结果占用的内存
+    private static final int QUEUE_CAPACITY = 1000;
+
+    private final Connection connection;
+    private final ExecutorService pool;
+
+    /**
+     * @param threads 并行扫描的线程数
+     */
+    public ParallelScanner(Connection connection, int threads) {
+        this.connection = connection;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "calllog-parallel-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 按region边界切分scan并行执行
+     */
+    public ResultScanner getScanner(TableName tableName, Scan scan, Order order) throws IOException {
+        if (scan.isReversed()) {
+            throw new IllegalArgumentException("不支持反向扫描");
+        }
+        List<Scan> scans = split(tableName, scan);
+        ParallelResultScanner scanner = new ParallelResultScanner(scans.size(), order, scan.getLimit());
+        for (int i = 0; i < scans.size(); i++) {
+            scanner.futures.add(pool.submit(new SubScan(tableName, scans.get(i), scanner, i)));
+        }
+        return scanner;
+    }
+
+    /**
+     * 取scan范围与每个region范围的交集，得到各region上的子scan，顺序与region顺序一致
+     */
+    List<Scan> split(TableName tableName, Scan scan) throws IOException {
+        Pair<byte[][], byte[][]> keys;
+        try (RegionLocator regionLocator = connection.getRegionLocator(tableName)) {
+            keys = regionLocator.getStartEndKeys();
+        }
+        byte[] scanStart = scan.getStartRow();
+        byte[] scanStop = scan.getStopRow();
+        List<Scan> scans = new ArrayList<>();
+        for (int i = 0; i < keys.getFirst().length; i++) {
+            byte[] regionStart = keys.getFirst()[i];
+            byte[] regionEnd = keys.getSecond()[i];
+            // region在scan范围之前或之后
+            if (regionEnd.length > 0 && Bytes.compareTo(regionEnd, scanStart) <= 0) {
+                continue;
+            }
+            if (scanStop.length > 0 && Bytes.compareTo(regionStart, scanStop) > 0) {
+                continue;
+            }
+            Scan subScan = new Scan(scan);
+            if (Bytes.compareTo(regionStart, scanStart) > 0) {
+                subScan.withStartRow(regionStart, true);
+            }
+            if (regionEnd.length > 0 && (scanStop.length == 0 || Bytes.compareTo(regionEnd, scanStop) <= 0)) {
+                subScan.withStopRow(regionEnd, false);
+            }
+            // 结束行恰好是region起始行且不包含时，这个region没有数据
+            if (subScan.getStopRow().length > 0 && !subScan.includeStopRow()
+                    && Bytes.equals(subScan.getStartRow(), subScan.getStopRow())) {
+                continue;
+            }
+            scans.add(subScan);
+        }
+        if (scans.isEmpty()) {
+            scans.add(new Scan(scan));
+        }
+        return scans;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 一个region上的子scan，结果写入队列
+     */
+    private class SubScan implements Callable<Void> {
+        private final TableName tableName;
+        private final Scan scan;
+        private final ParallelResultScanner target;
+        private final int index;
+
+        SubScan(TableName tableName, Scan scan, ParallelResultScanner target, int index) {
+            this.tableName = tableName;
+            this.scan = scan;
+            this.target = target;
+            this.index = index;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            // Table不是线程安全的，每个子scan使用自己的Table
+            try (Table table = connection.getTable(tableName);
+                 ResultScanner scanner = table.getScanner(scan)) {
+                for (Result result : scanner) {
+                    if (!target.offer(index, result)) {
+                        return null;
+                    }
+                }
+            } catch (Exception e) {
+                target.error.compareAndSet(null, e);
+            } finally {
+                target.offer(index, END);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 合并各子scan结果的scanner
+     */
+    private static class ParallelResultScanner implements ResultScanner {
+        private final List<BlockingQueue<Result>> queues = new ArrayList<>();
+        private final List<Future<Void>> futures = new ArrayList<>();
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+        private final Order order;
+        private final int limit;
+        private volatile boolean closed;
+        // KEY顺序下当前读取的子scan；ARRIVAL顺序下已结束的子scan数
+        private int current;
+        private int returned;
+
+        ParallelResultScanner(int scans, Order order, int limit) {
+            this.order = order;
+            this.limit = limit;
+            int queueCount = order == Order.KEY ? scans : 1;
+            for (int i = 0; i < queueCount; i++) {
+                queues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+            }
+        }
+
+        /**
+         * 队列满时等待，scanner关闭后返回false让子scan退出
+         */
+        boolean offer(int index, Result result) throws InterruptedException {
+            BlockingQueue<Result> queue = queues.get(order == Order.KEY ? index : 0);
+            while (!closed) {
+                if (queue.offer(result, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Result next() throws IOException {
+            if (closed || (limit > 0 && returned >= limit)) {
+                return null;
+            }
+            int total = futures.size();
+            try {
+                while (current < total) {
+                    Result result = queues.get(order == Order.KEY ? current : 0).take();
+                    if (error.get() != null) {
+                        close();
+                        throw new IOException("并行扫描失败", error.get());
+                    }
+                    if (result == END) {
+                        current++;
+                        continue;
+                    }
+                    returned++;
+                    return result;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw (InterruptedIOException) new InterruptedIOException("并行扫描被中断").initCause(e);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            for (BlockingQueue<Result> queue : queues) {
+                queue.clear();
+            }
+        }
+
+        @Override
+        public boolean renewLease() {
+            return false;
+        }
+
+        @Override
+        public ScanMetrics getScanMetrics() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.example.calllog;
+
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * rowkey加盐
+ * 原rowkey前加上 "桶号_"，桶号由原rowkey的hash决定，同一个用户的记录会均匀打散到所有桶（region）上，
+ * 避免热点用户的集中写入落在同一个region server。
+ * 表按桶边界预分区，查询时对每个桶各发一个scan，再按原rowkey归并，结果顺序与不加盐时一致（时间倒序）
+ */
+public class RowKeySalter {
+    // 桶号与原rowkey之间的分隔符
+    private static final char SEPARATOR = '_';
+
+    private final int buckets;
+    // 桶号的位数，桶号左补0保证所有前缀等长，字典序与数值序一致
+    private final int width;
+
+    public RowKeySalter(int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("桶数必须大于0：" + buckets);
+        }
+        this.buckets = buckets;
+        this.width = String.valueOf(buckets - 1).length();
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * 原rowkey所在的桶
+     */
+    public int bucketOf(String rowkey) {
+        return (rowkey.hashCode() & Integer.MAX_VALUE) % buckets;
+    }
+
+    /**
+     * 加盐后的rowkey
+     */
+    public String salt(String rowkey) {
+        return prefix(bucketOf(rowkey)) + rowkey;
+    }
+
+    /**
+     * 二进制rowkey所在的桶
+     */
+    public int bucketOf(byte[] rowkey) {
+        return (Bytes.hashCode(rowkey) & Integer.MAX_VALUE) % buckets;
+    }
+
+    /**
+     * 加盐后的二进制rowkey
+     */
+    public byte[] salt(byte[] rowkey) {
+        return Bytes.add(Bytes.toBytes(prefix(bucketOf(rowkey))), rowkey);
+    }
+
+    /**
+     * 去掉盐前缀
+     */
+    public String unsalt(String saltedRowkey) {
+        return saltedRowkey.substring(width + 1);
+    }
+
+    /**
+     * 预分区的分割点：每个桶的起始前缀，第0个桶从表头开始
+     */
+    public byte[][] getSplitKeys() {
+        byte[][] splitKeys = new byte[buckets - 1][];
+        for (int i = 1; i < buckets; i++) {
+            splitKeys[i - 1] = Bytes.toBytes(prefix(i));
+        }
+        return splitKeys;
+    }
+
+    private String prefix(int bucket) {
+        StringBuilder builder = new StringBuilder(width + 1);
+        String number = String.valueOf(bucket);
+        for (int i = number.length(); i < width; i++) {
+            builder.append('0');
+        }
+        return builder.append(number).append(SEPARATOR).toString();
+    }
+
+    /**
+     * 按未加盐的rowkey范围扫描：每个桶一个scan，按原rowkey归并
+     * @param scan 起止行为未加盐的rowkey，其余设置（列、过滤器、caching等）原样用于每个桶
+     */
+    public ResultScanner getScanner(Table table, Scan scan) throws IOException {
+        List<ResultScanner> scanners = new ArrayList<>(buckets);
+        try {
+            for (Scan bucketScan : getBucketScans(scan)) {
+                scanners.add(table.getScanner(bucketScan));
+            }
+        } catch (IOException e) {
+            for (ResultScanner scanner : scanners) {
+                scanner.close();
+            }
+            throw e;
+        }
+        return new MergingScanner(scanners, width + 1, scan.getLimit());
+    }
+
+    /**
+     * 把未加盐rowkey范围的scan拆成每个桶一个scan
+     */
+    public List<Scan> getBucketScans(Scan scan) throws IOException {
+        List<Scan> scans = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            byte[] prefix = Bytes.toBytes(prefix(i));
+            Scan bucketScan = new Scan(scan);
+            bucketScan.withStartRow(Bytes.add(prefix, scan.getStartRow()), scan.includeStartRow());
+            if (scan.getStopRow().length == 0) {
+                // 没有结束行时扫到本桶结束：分隔符的下一个字符
+                byte[] stop = prefix.clone();
+                stop[stop.length - 1]++;
+                bucketScan.withStopRow(stop);
+            } else {
+                bucketScan.withStopRow(Bytes.add(prefix, scan.getStopRow()), scan.includeStopRow());
+            }
+            scans.add(bucketScan);
+        }
+        return scans;
+    }
+
+    /**
+     * 多个桶的scanner按去盐后的rowkey做多路归并
+     */
+    private static class MergingScanner implements ResultScanner {
+        private final List<ResultScanner> scanners;
+        private final int prefixLength;
+        private final int limit;
+        private final PriorityQueue<Head> heads;
+        private int returned;
+
+        MergingScanner(List<ResultScanner> scanners, int prefixLength, int limit) throws IOException {
+            this.scanners = scanners;
+            this.prefixLength = prefixLength;
+            this.limit = limit;
+            this.heads = new PriorityQueue<>(Math.max(1, scanners.size()), this::compare);
+            for (ResultScanner scanner : scanners) {
+                advance(scanner);
+            }
+        }
+
+        private int compare(Head a, Head b) {
+            byte[] rowA = a.result.getRow();
+            byte[] rowB = b.result.getRow();
+            return Bytes.compareTo(rowA, prefixLength, rowA.length - prefixLength,
+                    rowB, prefixLength, rowB.length - prefixLength);
+        }
+
+        private void advance(ResultScanner scanner) throws IOException {
+            Result result = scanner.next();
+            if (result != null) {
+                heads.add(new Head(result, scanner));
+            }
+        }
+
+        @Override
+        public Result next() throws IOException {
+            if (heads.isEmpty() || (limit > 0 && returned >= limit)) {
+                return null;
+            }
+            Head head = heads.poll();
+            advance(head.scanner);
+            returned++;
+            return head.result;
+        }
+
+        @Override
+        public void close() {
+            for (ResultScanner scanner : scanners) {
+                scanner.close();
+            }
+            heads.clear();
+        }
+
+        @Override
+        public boolean renewLease() {
+            boolean renewed = true;
+            for (ResultScanner scanner : scanners) {
+                renewed &= scanner.renewLease();
+            }
+            return renewed;
+        }
+
+        @Override
+        public ScanMetrics getScanMetrics() {
+            return null;
+        }
+    }
+
+    private static class Head {
+        final Result result;
+        final ResultScanner scanner;
+
+        Head(Result result, ResultScanner scanner) {
+            this.result = result;
+            this.scanner = scanner;
+        }
+    }
+}
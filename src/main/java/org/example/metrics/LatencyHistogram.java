@@ -0,0 +1,115 @@
+package org.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数线性延迟直方图（与HdrHistogram相同的分桶思路）
+ * 0~63纳秒每纳秒一个桶，之后每个2的幂区间再等分32个桶，相对误差不超过1/32；超过1小时的值记在最后一个桶。
+ * 记录只有一次原子自增，多线程记录不需要加锁；snapshot()复制计数后在副本上计算分位数
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final long MAX_VALUE = TimeUnit.HOURS.toNanos(1);
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒，负数按0处理
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 并发更新max时重试
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // 最高位在第p位时右移p-5位，保留最高6位，结果在[32, 63]
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /**
+     * 桶内的最大值
+     */
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    /**
+     * 某一时刻的直方图副本，并发记录时count与sum可能相差几次记录
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * @param quantile 0~1，例如0.999
+         * @return 纳秒，所在桶的上界，不超过max
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
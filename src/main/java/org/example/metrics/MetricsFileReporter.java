@@ -0,0 +1,103 @@
+package org.example.metrics;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期把指标追加到本地CSV文件
+ * 每个周期每个操作一行：时间戳,表,操作,累计次数,本周期每秒次数,累计失败,发送字节,接收字节,mean,p50,p99,p999,max（延迟单位微秒）
+ * 分位数是从启动开始的累计分布
+ */
+public class MetricsFileReporter implements AutoCloseable {
+    static final String HEADER = "timestamp,table,operation,count,opsPerSec,errors,bytesSent,bytesReceived,"
+            + "meanMicros,p50Micros,p99Micros,p999Micros,maxMicros";
+
+    private final MetricsRegistry registry;
+    private final String path;
+    private final ScheduledExecutorService executor;
+    // 上一周期的次数，用于计算吞吐
+    private final Map<OperationMetrics, Long> lastCounts = new HashMap<>();
+    private long lastReportNanos = System.nanoTime();
+
+    public MetricsFileReporter(MetricsRegistry registry, String path) {
+        this.registry = registry;
+        this.path = path;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 每periodSeconds秒写一次
+     */
+    public MetricsFileReporter start(long periodSeconds) throws IOException {
+        try (Writer writer = open()) {
+            writer.write(HEADER + "\n");
+        }
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                report();
+            } catch (IOException e) {
+                System.out.println("写入指标失败：" + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return this;
+    }
+
+    synchronized void report() throws IOException {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastReportNanos) / 1e9;
+        lastReportNanos = now;
+        long timestamp = System.currentTimeMillis();
+        StringBuilder lines = new StringBuilder();
+        for (OperationMetrics metrics : registry.getAll()) {
+            LatencyHistogram.Snapshot latency = metrics.getLatency();
+            Long last = lastCounts.put(metrics, latency.getCount());
+            double rate = (latency.getCount() - (last == null ? 0 : last)) / seconds;
+            lines.append(timestamp).append(',')
+                    .append(metrics.getTable()).append(',')
+                    .append(metrics.getOperation()).append(',')
+                    .append(latency.getCount()).append(',')
+                    .append(format(rate)).append(',')
+                    .append(metrics.getErrors()).append(',')
+                    .append(metrics.getBytesSent()).append(',')
+                    .append(metrics.getBytesReceived()).append(',')
+                    .append(format(latency.getMeanNanos() / 1000.0)).append(',')
+                    .append(format(latency.getValueAtQuantile(0.5) / 1000.0)).append(',')
+                    .append(format(latency.getValueAtQuantile(0.99) / 1000.0)).append(',')
+                    .append(format(latency.getValueAtQuantile(0.999) / 1000.0)).append(',')
+                    .append(format(latency.getMaxNanos() / 1000.0)).append('\n');
+        }
+        try (Writer writer = open()) {
+            writer.write(lines.toString());
+        }
+    }
+
+    private Writer open() throws IOException {
+        return new OutputStreamWriter(new FileOutputStream(path, true), StandardCharsets.UTF_8);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /**
+     * 停止定时任务并写最后一次
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        report();
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 表 -> 操作 组织的指标注册表
+ * 查找不分配对象，热点路径上可以每次调用get；也可以把返回的OperationMetrics保存下来复用
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    // JMX中的域名
+    private static final String JMX_DOMAIN = "org.example.hbase";
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, OperationMetrics>> tables =
+            new ConcurrentHashMap<>();
+    private volatile boolean jmxEnabled;
+
+    /**
+     * 进程内默认的注册表，App和CallLogDemo都记录在这里
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public OperationMetrics get(String table, String operation) {
+        ConcurrentHashMap<String, OperationMetrics> operations = tables.get(table);
+        if (operations == null) {
+            operations = tables.computeIfAbsent(table, t -> new ConcurrentHashMap<>());
+        }
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, o -> create(table, o));
+        }
+        return metrics;
+    }
+
+    private OperationMetrics create(String table, String operation) {
+        OperationMetrics metrics = new OperationMetrics(table, operation);
+        if (jmxEnabled) {
+            register(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * 当前所有操作的指标
+     */
+    public List<OperationMetrics> getAll() {
+        List<OperationMetrics> all = new ArrayList<>();
+        for (ConcurrentHashMap<String, OperationMetrics> operations : tables.values()) {
+            all.addAll(operations.values());
+        }
+        return all;
+    }
+
+    /**
+     * 把已有和之后新建的指标注册到平台MBeanServer，
+     * ObjectName为 org.example.hbase:type=Operation,table=表名,operation=操作名
+     */
+    public synchronized void enableJmx() {
+        if (jmxEnabled) {
+            return;
+        }
+        jmxEnabled = true;
+        for (OperationMetrics metrics : getAll()) {
+            register(metrics);
+        }
+    }
+
+    private static void register(OperationMetrics metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Operation,table="
+                    + ObjectName.quote(metrics.getTable()) + ",operation=" + ObjectName.quote(metrics.getOperation()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            // JMX只用于观察，注册失败不影响记录
+            System.out.println("注册MBean失败：" + e.getMessage());
+        }
+    }
+}
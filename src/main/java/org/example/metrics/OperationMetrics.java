@@ -0,0 +1,127 @@
+package org.example.metrics;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 某张表上某种操作的指标：延迟分布、次数、失败次数、发送和接收的字节数
+ * 用法：
+ * long start = System.nanoTime();
+ * try { ...; metrics.recordSuccess(start, sent, received); } catch (IOException e) { metrics.recordFailure(start); throw e; }
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+    private final String table;
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    OperationMetrics(String table, String operation) {
+        this.table = table;
+        this.operation = operation;
+    }
+
+    public void recordSuccess(long startNanos, long sent, long received) {
+        latency.record(System.nanoTime() - startNanos);
+        bytesSent.add(sent);
+        bytesReceived.add(received);
+    }
+
+    /**
+     * 失败的操作同样计入延迟分布
+     */
+    public void recordFailure(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        errors.increment();
+    }
+
+    /**
+     * Mutation中单元格按KeyValue格式序列化后的大小，近似RPC发送的字节数
+     */
+    public static long sizeOf(Mutation mutation) {
+        long size = 0;
+        for (List<Cell> cells : mutation.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                size += KeyValueUtil.length(cell);
+            }
+        }
+        return size;
+    }
+
+    public static long sizeOf(List<? extends Mutation> mutations) {
+        long size = 0;
+        for (Mutation mutation : mutations) {
+            size += sizeOf(mutation);
+        }
+        return size;
+    }
+
+    public static long sizeOf(Result result) {
+        return Result.getTotalSizeOfCells(result);
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public String getTable() {
+        return table;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.snapshot().getMeanNanos() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.snapshot().getValueAtQuantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.snapshot().getValueAtQuantile(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.snapshot().getValueAtQuantile(0.999) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.snapshot().getMaxNanos() / 1000.0;
+    }
+}
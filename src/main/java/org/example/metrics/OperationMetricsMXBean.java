@@ -0,0 +1,28 @@
+package org.example.metrics;
+
+/**
+ * 通过JMX暴露的单个操作的指标，延迟单位为微秒
+ */
+public interface OperationMetricsMXBean {
+    String getTable();
+
+    String getOperation();
+
+    long getCount();
+
+    long getErrors();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,63 @@
+package com.amir.hdfs2hbase;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit test for WordCountBuffer.
+ */
+public class WordCountBufferTest
+    extends TestCase
+{
+    private static Map<String, Integer> drain( WordCountBuffer buffer, Map<String, Integer> counts ) throws Exception
+    {
+        buffer.flush( ( word, offset, length, count ) ->
+                counts.merge( Bytes.toString( word, offset, length ), count, Integer::sum ) );
+        return counts;
+    }
+
+    public void testAggregatesRepeatedWords() throws Exception
+    {
+        WordCountBuffer buffer = new WordCountBuffer( 16, 1024 );
+        byte[] line = Bytes.toBytes( "a bb a ccc bb a" );
+        buffer.add( line, 0, 1, 1 );
+        buffer.add( line, 2, 2, 1 );
+        buffer.add( line, 5, 1, 1 );
+        buffer.add( line, 7, 3, 1 );
+        buffer.add( line, 11, 2, 1 );
+        buffer.add( line, 14, 1, 1 );
+        assertEquals( 3, buffer.size() );
+        Map<String, Integer> counts = drain( buffer, new HashMap<>() );
+        assertEquals( Integer.valueOf( 3 ), counts.get( "a" ) );
+        assertEquals( Integer.valueOf( 2 ), counts.get( "bb" ) );
+        assertEquals( Integer.valueOf( 1 ), counts.get( "ccc" ) );
+        assertEquals( 0, buffer.size() );
+    }
+
+    public void testFlushWhenFull() throws Exception
+    {
+        WordCountBuffer buffer = new WordCountBuffer( 100, 1000 );
+        Map<String, Integer> counts = new HashMap<>();
+        for ( int round = 0; round < 3; round++ )
+        {
+            for ( int i = 0; i < 1000; i++ )
+            {
+                byte[] word = Bytes.toBytes( "w" + i );
+                if ( buffer.isFull( word.length ) )
+                {
+                    drain( buffer, counts );
+                }
+                buffer.add( word, 0, word.length, 1 );
+            }
+        }
+        drain( buffer, counts );
+        assertEquals( 1000, counts.size() );
+        for ( Integer count : counts.values() )
+        {
+            assertEquals( Integer.valueOf( 3 ), count );
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.Cursor;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit test for FlowControlledScanConsumer.
+ */
+public class FlowControlledScanConsumerTest
+    extends TestCase
+{
+    private static class FakeController implements AdvancedScanResultConsumer.ScanController
+    {
+        int suspends;
+        int resumes;
+        boolean terminated;
+
+        @Override
+        public AdvancedScanResultConsumer.ScanResumer suspend()
+        {
+            suspends++;
+            return () -> resumes++;
+        }
+
+        @Override
+        public void terminate()
+        {
+            terminated = true;
+        }
+
+        @Override
+        public Optional<Cursor> cursor()
+        {
+            return Optional.empty();
+        }
+    }
+
+    private final List<CompletableFuture<Object>> pending = new ArrayList<>();
+
+    private FlowControlledScanConsumer newConsumer( int maxInFlight )
+    {
+        return new FlowControlledScanConsumer( result -> {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            pending.add( future );
+            return future;
+        }, maxInFlight );
+    }
+
+    private static Result[] rows( int count )
+    {
+        Result[] results = new Result[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            results[i] = Result.EMPTY_RESULT;
+        }
+        return results;
+    }
+
+    public void testSuspendUntilHandlersCatchUp()
+    {
+        FlowControlledScanConsumer consumer = newConsumer( 4 );
+        FakeController controller = new FakeController();
+        consumer.onNext( rows( 3 ), controller );
+        assertEquals( 0, controller.suspends );
+        consumer.onNext( rows( 2 ), controller );
+        assertEquals( 1, controller.suspends );
+
+        // 5行处理中，降到2行时恢复
+        pending.get( 0 ).complete( null );
+        pending.get( 1 ).complete( null );
+        assertEquals( 0, controller.resumes );
+        pending.get( 2 ).complete( null );
+        assertEquals( 1, controller.resumes );
+
+        consumer.onComplete();
+        assertFalse( consumer.getFuture().isDone() );
+        pending.get( 3 ).complete( null );
+        pending.get( 4 ).complete( null );
+        assertEquals( Long.valueOf( 5 ), consumer.getFuture().join() );
+    }
+
+    public void testHandlerFailureTerminatesScan()
+    {
+        FlowControlledScanConsumer consumer = newConsumer( 10 );
+        FakeController controller = new FakeController();
+        consumer.onNext( rows( 1 ), controller );
+        pending.get( 0 ).completeExceptionally( new IllegalStateException( "handler failed" ) );
+        consumer.onNext( rows( 1 ), controller );
+        assertTrue( controller.terminated );
+        consumer.onComplete();
+        assertTrue( consumer.getFuture().isCompletedExceptionally() );
+    }
+}
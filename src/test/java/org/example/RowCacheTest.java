@@ -0,0 +1,162 @@
+package org.example;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit test for RowCache.
+ */
+public class RowCacheTest
+    extends TestCase
+{
+    private static final TableName TABLE = TableName.valueOf( "test1" );
+
+    // 每行的值是该行被加载的次数
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Integer> batchSizes = Collections.synchronizedList( new ArrayList<>() );
+    private volatile CountDownLatch gate = new CountDownLatch( 0 );
+    private final AtomicInteger entered = new AtomicInteger();
+
+    private final RowCache.Loader loader = ( tableName, gets ) -> {
+        entered.incrementAndGet();
+        try
+        {
+            gate.await();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new RuntimeException( e );
+        }
+        batchSizes.add( gets.size() );
+        Result[] results = new Result[gets.size()];
+        for ( int i = 0; i < results.length; i++ )
+        {
+            Get get = gets.get( i );
+            results[i] = Result.create( new Cell[]{ new KeyValue( get.getRow(), Bytes.toBytes( "cf1" ),
+                    Bytes.toBytes( "name" ), Bytes.toBytes( loads.incrementAndGet() ) ) } );
+        }
+        return results;
+    };
+
+    private static int valueOf( Result result )
+    {
+        return Bytes.toInt( CellUtil.cloneValue( result.rawCells()[0] ) );
+    }
+
+    public void testHitAfterMiss() throws Exception
+    {
+        try ( RowCache cache = new RowCache( loader, 10, 60000 ) )
+        {
+            assertEquals( 1, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+            assertEquals( 1, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+            assertEquals( 1, cache.getHits() );
+            assertEquals( 1, cache.getMisses() );
+        }
+    }
+
+    public void testReusedRowBufferDoesNotCorruptEntry() throws Exception
+    {
+        try ( RowCache cache = new RowCache( loader, 10, 60000 ) )
+        {
+            byte[] buffer = Bytes.toBytes( "row1" );
+            assertEquals( 1, valueOf( cache.get( TABLE, buffer ) ) );
+            // 调用方复用数组查询另一行
+            System.arraycopy( Bytes.toBytes( "row2" ), 0, buffer, 0, buffer.length );
+            assertEquals( 2, valueOf( cache.get( TABLE, buffer ) ) );
+            assertEquals( 1, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+            assertEquals( 2, valueOf( cache.get( TABLE, Bytes.toBytes( "row2" ) ) ) );
+            assertEquals( 2, cache.getHits() );
+            assertEquals( 2, cache.getMisses() );
+        }
+    }
+
+    public void testInvalidate() throws Exception
+    {
+        try ( RowCache cache = new RowCache( loader, 10, 60000 ) )
+        {
+            cache.get( TABLE, Bytes.toBytes( "row1" ) );
+            cache.invalidate( TABLE, Bytes.toBytes( "row1" ) );
+            assertEquals( 2, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+        }
+    }
+
+    public void testExpire() throws Exception
+    {
+        try ( RowCache cache = new RowCache( loader, 10, 1 ) )
+        {
+            cache.get( TABLE, Bytes.toBytes( "row1" ) );
+            Thread.sleep( 5 );
+            assertEquals( 2, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+        }
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception
+    {
+        try ( RowCache cache = new RowCache( loader, 2, 60000 ) )
+        {
+            cache.get( TABLE, Bytes.toBytes( "row1" ) );
+            cache.get( TABLE, Bytes.toBytes( "row2" ) );
+            cache.get( TABLE, Bytes.toBytes( "row1" ) );
+            cache.get( TABLE, Bytes.toBytes( "row3" ) );
+            assertEquals( 1, cache.getEvictions() );
+            // row2最久未访问，被淘汰
+            assertEquals( 1, valueOf( cache.get( TABLE, Bytes.toBytes( "row1" ) ) ) );
+            assertEquals( 4, valueOf( cache.get( TABLE, Bytes.toBytes( "row2" ) ) ) );
+        }
+    }
+
+    public void testCoalesceAndBatchConcurrentMisses() throws Exception
+    {
+        gate = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try ( RowCache cache = new RowCache( loader, 100, 60000 ) )
+        {
+            // 第一个请求阻塞在加载中，后面的请求进入下一批
+            Future<Result> first = executor.submit( () -> cache.get( TABLE, Bytes.toBytes( "row0" ) ) );
+            waitFor( () -> entered.get() == 1 );
+            List<Future<Result>> futures = new ArrayList<>();
+            for ( int i = 0; i < 6; i++ )
+            {
+                String row = "row" + ( i % 3 + 1 );
+                futures.add( executor.submit( () -> cache.get( TABLE, Bytes.toBytes( row ) ) ) );
+            }
+            waitFor( () -> cache.getMisses() + cache.getCoalesced() == 7 );
+            gate.countDown();
+            first.get();
+            for ( Future<Result> future : futures )
+            {
+                future.get();
+            }
+            assertEquals( 4, cache.getMisses() );
+            assertEquals( 3, cache.getCoalesced() );
+            assertEquals( 2, cache.getBatches() );
+            assertEquals( Integer.valueOf( 3 ), batchSizes.get( 1 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void waitFor( Callable<Boolean> condition ) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( !condition.call() )
+        {
+            assertTrue( System.currentTimeMillis() < deadline );
+            Thread.sleep( 1 );
+        }
+    }
+}
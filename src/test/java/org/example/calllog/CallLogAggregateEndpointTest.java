@@ -0,0 +1,22 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for CallLogAggregateEndpoint.
+ */
+public class CallLogAggregateEndpointTest
+    extends TestCase
+{
+    public void testBucketUpperBoundsAreInclusive()
+    {
+        int[] bounds = CallLogAggregationClient.DEFAULT_BOUNDS;
+        assertEquals( 0, CallLogAggregateEndpoint.bucketOf( bounds, 1 ) );
+        assertEquals( 0, CallLogAggregateEndpoint.bucketOf( bounds, 30 ) );
+        assertEquals( 1, CallLogAggregateEndpoint.bucketOf( bounds, 31 ) );
+        assertEquals( 3, CallLogAggregateEndpoint.bucketOf( bounds, 180 ) );
+        // 超过所有上界的放在最后一个桶
+        assertEquals( 4, CallLogAggregateEndpoint.bucketOf( bounds, 181 ) );
+        assertEquals( 0, CallLogAggregateEndpoint.bucketOf( new int[0], 100 ) );
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Message;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unit test for CallLogAggregationClient.
+ */
+public class CallLogAggregationClientTest
+    extends TestCase
+{
+    private static final int[] BOUNDS = { 30, 60 };
+
+    public void testMergeRegionResponses() throws Exception
+    {
+        Message region1 = CallLogAggregateProtocol.newResponse( Arrays.asList(
+                CallLogAggregateProtocol.newStats( 0, 3, 100, 10, 50, new long[]{ 1, 2, 0 } ),
+                CallLogAggregateProtocol.newStats( 1, 1, 200, 200, 200, new long[]{ 0, 0, 1 } ) ) );
+        Message region2 = CallLogAggregateProtocol.newResponse( Arrays.asList(
+                CallLogAggregateProtocol.newStats( 0, 2, 70, 5, 65, new long[]{ 1, 0, 1 } ) ) );
+        Message empty = CallLogAggregateProtocol.newResponse( Arrays.<Message>asList() );
+
+        Map<Integer, CallLogAggregationClient.Stats> merged =
+                CallLogAggregationClient.merge( Arrays.asList( region1, roundTrip( region2 ), empty, null ), BOUNDS );
+        assertEquals( 2, merged.size() );
+        CallLogAggregationClient.Stats outbound = merged.get( 0 );
+        assertEquals( 5, outbound.getCount() );
+        assertEquals( 170, outbound.getSum() );
+        assertEquals( 5, outbound.getMin() );
+        assertEquals( 65, outbound.getMax() );
+        assertEquals( 34.0, outbound.getAverage(), 1e-9 );
+        assertTrue( Arrays.equals( new long[]{ 2, 2, 1 }, outbound.getHistogram() ) );
+        assertEquals( 1, merged.get( 1 ).getCount() );
+        assertTrue( Arrays.equals( new long[]{ 0, 0, 1 }, merged.get( 1 ).getHistogram() ) );
+    }
+
+    public void testRequestRoundTrip() throws Exception
+    {
+        Message request = roundTrip( CallLogAggregateProtocol.newRequest(
+                "a".getBytes(), "b".getBytes(), 1000, 2000, CallLogAggregationClient.DEFAULT_BOUNDS ) );
+        assertEquals( "a", new String( CallLogAggregateProtocol.getStartRow( request ) ) );
+        assertEquals( "b", new String( CallLogAggregateProtocol.getStopRow( request ) ) );
+        assertEquals( 1000, CallLogAggregateProtocol.getMinTimestamp( request ) );
+        assertEquals( 2000, CallLogAggregateProtocol.getMaxTimestamp( request ) );
+        assertTrue( Arrays.equals( CallLogAggregationClient.DEFAULT_BOUNDS,
+                CallLogAggregateProtocol.getHistogramBounds( request ) ) );
+    }
+
+    public void testRequestWithoutTimeRangeIsAllTime() throws Exception
+    {
+        // 没有时间范围字段的请求（旧客户端）不限制时间
+        Message request = roundTrip( DynamicMessage.getDefaultInstance( CallLogAggregateProtocol.REQUEST ) );
+        assertEquals( 0, CallLogAggregateProtocol.getMinTimestamp( request ) );
+        assertEquals( Long.MAX_VALUE, CallLogAggregateProtocol.getMaxTimestamp( request ) );
+    }
+
+    public void testScanRequestKeepsRowsAndTimeRange() throws Exception
+    {
+        Scan scan = new Scan().withStartRow( Bytes.toBytes( "18661990012_1" ) )
+                .withStopRow( Bytes.toBytes( "18661990012_2" ), true ).setTimeRange( 1000, 2000 );
+        List<Message> requests = CallLogAggregationClient.newRequests( scan, null, BOUNDS );
+        assertEquals( 1, requests.size() );
+        assertEquals( "18661990012_1", Bytes.toString( CallLogAggregateProtocol.getStartRow( requests.get( 0 ) ) ) );
+        // 包含的结束行换成不包含的 结束行+0x00
+        assertEquals( "18661990012_2\0", Bytes.toString( CallLogAggregateProtocol.getStopRow( requests.get( 0 ) ) ) );
+        assertEquals( 1000, CallLogAggregateProtocol.getMinTimestamp( requests.get( 0 ) ) );
+        assertEquals( 2000, CallLogAggregateProtocol.getMaxTimestamp( requests.get( 0 ) ) );
+    }
+
+    public void testSaltedScanFansOutPerBucket() throws Exception
+    {
+        RowKeySalter salter = new RowKeySalter( 4 );
+        Scan scan = new Scan().withStartRow( Bytes.toBytes( "18661990012_1" ) )
+                .withStopRow( Bytes.toBytes( "18661990012_2" ) ).setTimeRange( 1000, 2000 );
+        List<Message> requests = CallLogAggregationClient.newRequests( scan, salter, BOUNDS );
+        assertEquals( 4, requests.size() );
+        Set<String> prefixes = new HashSet<>();
+        for ( Message request : requests )
+        {
+            String start = Bytes.toString( CallLogAggregateProtocol.getStartRow( request ) );
+            String stop = Bytes.toString( CallLogAggregateProtocol.getStopRow( request ) );
+            assertTrue( start, start.endsWith( "_18661990012_1" ) );
+            String prefix = start.substring( 0, start.length() - "18661990012_1".length() );
+            assertEquals( prefix + "18661990012_2", stop );
+            // 同一用户的记录按完整rowkey散列到所有桶，每个桶都要发请求
+            prefixes.add( prefix );
+            assertEquals( 1000, CallLogAggregateProtocol.getMinTimestamp( request ) );
+            assertEquals( 2000, CallLogAggregateProtocol.getMaxTimestamp( request ) );
+        }
+        assertEquals( 4, prefixes.size() );
+    }
+
+    /**
+     * 与HBase的RPC一样，按原型序列化后再解析
+     */
+    private static Message roundTrip( Message message ) throws Exception
+    {
+        return DynamicMessage.getDefaultInstance( message.getDescriptorForType() )
+                .newBuilderForType().mergeFrom( message.toByteArray() ).build();
+    }
+}
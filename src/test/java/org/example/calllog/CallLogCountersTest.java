@@ -0,0 +1,124 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for CallLogCounters.
+ */
+public class CallLogCountersTest
+    extends TestCase
+{
+    public void testCoalescePerUserDay()
+    {
+        CallLogCounters counters = new CallLogCounters();
+        for ( int i = 0; i < 100; i++ )
+        {
+            counters.add( "18661990012", "2024-03-01 0" + ( i % 10 ) + ":00:00", i % 2, 10 );
+        }
+        counters.add( "18661990012", "2024-03-02 08:00:00", 0, 5 );
+        assertEquals( 2, counters.size() );
+
+        List<Increment> increments = counters.toIncrements();
+        assertEquals( 2, increments.size() );
+        for ( Increment increment : increments )
+        {
+            if ( Bytes.toString( increment.getRow() ).equals( "18661990012_20240301" ) )
+            {
+                assertEquals( 4, increment.getFamilyCellMap().get( CallLogCounters.FAMILY ).size() );
+                assertEquals( 50, amount( increment, "calls_0" ) );
+                assertEquals( 500, amount( increment, "length_1" ) );
+            }
+            else
+            {
+                assertEquals( "18661990012_20240302", Bytes.toString( increment.getRow() ) );
+                // 没有呼入记录时不写呼入列
+                assertEquals( 2, increment.getFamilyCellMap().get( CallLogCounters.FAMILY ).size() );
+                assertEquals( 5, amount( increment, "length_0" ) );
+            }
+        }
+    }
+
+    public void testPartialFailureKeepsOnlyFailedDeltas() throws Exception
+    {
+        CallLogCounters counters = new CallLogCounters();
+        counters.add( "18661990012", "2024-03-01 08:00:00", 0, 10 );
+        counters.add( "18661990012", "2024-03-02 08:00:00", 1, 20 );
+        List<String> sent = new ArrayList<>();
+        // 第一次batch只有03-01写入成功
+        Table table = batchTable( ( increments, results ) -> {
+            for ( int i = 0; i < increments.size(); i++ )
+            {
+                String row = Bytes.toString( increments.get( i ).getRow() );
+                sent.add( row );
+                results[i] = sent.size() <= 2 && row.endsWith( "0302" ) ? new IOException( "region不可用" )
+                        : Result.EMPTY_RESULT;
+            }
+            if ( sent.size() <= 2 )
+            {
+                throw new IOException( "部分失败" );
+            }
+        } );
+        try
+        {
+            counters.flush( table );
+            fail();
+        }
+        catch ( IOException expected )
+        {
+        }
+        assertEquals( 1, counters.size() );
+        assertEquals( "18661990012_20240302", Bytes.toString( counters.toIncrements().get( 0 ).getRow() ) );
+
+        // 重试只发失败的那个
+        counters.flush( table );
+        assertEquals( 0, counters.size() );
+        assertEquals( 3, sent.size() );
+        assertEquals( "18661990012_20240302", sent.get( 2 ) );
+    }
+
+    private interface Batch
+    {
+        void run( List<? extends Row> actions, Object[] results ) throws IOException;
+    }
+
+    /**
+     * 只实现batch的Table
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Table batchTable( Batch batch )
+    {
+        return (Table) Proxy.newProxyInstance( Table.class.getClassLoader(), new Class<?>[]{ Table.class },
+                ( proxy, method, args ) -> {
+                    if ( !method.getName().equals( "batch" ) || args.length != 2 )
+                    {
+                        throw new UnsupportedOperationException( method.getName() );
+                    }
+                    batch.run( (List<? extends Row>) args[0], (Object[]) args[1] );
+                    return null;
+                } );
+    }
+
+    private static long amount( Increment increment, String qualifier )
+    {
+        for ( Cell cell : increment.getFamilyCellMap().get( CallLogCounters.FAMILY ) )
+        {
+            if ( Bytes.toString( CellUtil.cloneQualifier( cell ) ).equals( qualifier ) )
+            {
+                return Bytes.toLong( CellUtil.cloneValue( cell ) );
+            }
+        }
+        return -1;
+    }
+}
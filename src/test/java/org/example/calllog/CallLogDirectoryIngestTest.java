@@ -0,0 +1,128 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for CallLogDirectoryIngest.
+ */
+public class CallLogDirectoryIngestTest
+    extends TestCase
+{
+    public void testCsvStopsAtPartialLine() throws Exception
+    {
+        byte[] data = Bytes.toBytes( "18661990012,19900000001,0,60,2024-03-01 08:00:00\r\n"
+                + "18661990012,19900000002,1,30,2024-03-02 09:00:00\n"
+                + "18661990012,199000" );
+        List<String> records = new ArrayList<>();
+        int consumed = CallLogDirectoryIngest.parseCsv( ByteBuffer.wrap( data ),
+                ( offset, phoneNumber, dnum, type, length, date, callTime, message ) ->
+                        records.add( offset + ":" + phoneNumber + "," + dnum + "," + type + "," + length + "," + date ) );
+        assertEquals( 2, records.size() );
+        assertEquals( "0:18661990012,19900000001,0,60,2024-03-01 08:00:00", records.get( 0 ) );
+        assertEquals( "50:18661990012,19900000002,1,30,2024-03-02 09:00:00", records.get( 1 ) );
+        assertEquals( 99, consumed );
+    }
+
+    public void testProtobufStopsAtPartialMessage() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for ( int i = 0; i < 3; i++ )
+        {
+            CallLogOuterClass.CallLog.newBuilder().setDnum( "1990000000" + i ).setType( i % 2 ).setLength( 10 * i )
+                    .setDate( "2024-03-0" + ( i + 1 ) + " 08:00:00" ).build().writeDelimitedTo( out );
+        }
+        byte[] data = out.toByteArray();
+        int complete = data.length;
+        byte[] truncated = new byte[complete - 5];
+        System.arraycopy( data, 0, truncated, 0, truncated.length );
+
+        List<String> records = new ArrayList<>();
+        int consumed = CallLogDirectoryIngest.parseProtobuf( ByteBuffer.wrap( truncated ), "18661990012",
+                ( offset, phoneNumber, dnum, type, length, date, callTime, message ) ->
+                        records.add( phoneNumber + "," + dnum + "," + type + "," + length + "," + date ) );
+        assertEquals( 2, records.size() );
+        assertEquals( "18661990012,19900000001,1,10,2024-03-02 08:00:00", records.get( 1 ) );
+        assertEquals( complete / 3 * 2, consumed );
+    }
+
+    public void testCsvSkipsUnparsableLines() throws Exception
+    {
+        byte[] data = Bytes.toBytes( "phone,dnum,type,length,date\n"
+                + "18661990012,19900000001,x,60,2024-03-01 08:00:00\n"
+                + "18661990012,19900000002,1,30,2024-03-02 09:00:00\n"
+                + "18661990012,19900000003,0,20,2024-13-40 09:00:00\n" );
+        List<String> records = new ArrayList<>();
+        int consumed = CallLogDirectoryIngest.parseCsv( ByteBuffer.wrap( data ),
+                ( offset, phoneNumber, dnum, type, length, date, callTime, message ) ->
+                        records.add( dnum + "," + callTime ) );
+        assertEquals( 1, records.size() );
+        assertEquals( "19900000002," + CallLogDirectoryIngest.parseCallTime( "2024-03-02 09:00:00" ), records.get( 0 ) );
+        assertEquals( data.length, consumed );
+    }
+
+    public void testProtobufSkipsUnparsableDate() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CallLogOuterClass.CallLog.newBuilder().setDnum( "19900000001" ).setDate( "not a date" ).build()
+                .writeDelimitedTo( out );
+        CallLogOuterClass.CallLog.newBuilder().setDnum( "19900000002" ).setDate( "2024-03-02 09:00:00" ).build()
+                .writeDelimitedTo( out );
+        byte[] data = out.toByteArray();
+
+        List<String> records = new ArrayList<>();
+        int consumed = CallLogDirectoryIngest.parseProtobuf( ByteBuffer.wrap( data ), "18661990012",
+                ( offset, phoneNumber, dnum, type, length, date, callTime, message ) -> records.add( dnum ) );
+        assertEquals( 1, records.size() );
+        assertEquals( "19900000002", records.get( 0 ) );
+        assertEquals( data.length, consumed );
+    }
+
+    public void testRowKeySuffixDistinguishesFilesAndOffsets() throws Exception
+    {
+        // 旧的后缀offset % 10000在这两个偏移量上相同
+        assertFalse( CallLogDirectoryIngest.rowKeySuffix( 0, 5 ).equals( CallLogDirectoryIngest.rowKeySuffix( 0, 10005 ) ) );
+        assertFalse( CallLogDirectoryIngest.rowKeySuffix( 0, 5 ).equals( CallLogDirectoryIngest.rowKeySuffix( 1, 5 ) ) );
+        // 编号和偏移量直接拼接时 1、23 与 12、3 相同
+        assertFalse( CallLogDirectoryIngest.rowKeySuffix( 1, 23 ).equals( CallLogDirectoryIngest.rowKeySuffix( 12, 3 ) ) );
+        assertEquals( -1, CallLogDirectoryIngest.rowKeySuffix( 12, 3 ).indexOf( '_' ) );
+    }
+
+    public void testFileIdsSurviveRestart() throws Exception
+    {
+        Path directory = Files.createTempDirectory( "calllog-ingest" );
+        try
+        {
+            CallLogDirectoryIngest ingest = newIngest( directory );
+            assertEquals( 0, ingest.fileId( "18661990012_0001.pb" ) );
+            assertEquals( 1, ingest.fileId( "a.csv" ) );
+            assertEquals( 0, ingest.fileId( "18661990012_0001.pb" ) );
+
+            // 编号在分配时就已写入检查点
+            CallLogDirectoryIngest restarted = newIngest( directory );
+            restarted.loadCheckpoint();
+            assertEquals( 1, restarted.fileId( "a.csv" ) );
+            assertEquals( 0, restarted.fileId( "18661990012_0001.pb" ) );
+            assertEquals( 2, restarted.fileId( "b.csv" ) );
+        }
+        finally
+        {
+            Files.deleteIfExists( directory.resolve( CallLogDirectoryIngest.CHECKPOINT_FILE ) );
+            Files.delete( directory );
+        }
+    }
+
+    private static CallLogDirectoryIngest newIngest( Path directory )
+    {
+        return new CallLogDirectoryIngest( null, TableName.valueOf( "calllog" ), directory, null, 10, 10 );
+    }
+}
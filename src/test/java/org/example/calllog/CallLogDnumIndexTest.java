@@ -0,0 +1,46 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for CallLogDnumIndex.
+ */
+public class CallLogDnumIndexTest
+    extends TestCase
+{
+    public void testIndexRowKey()
+    {
+        assertEquals( "19961990012_9223370324984787969_18661990012",
+                CallLogDnumIndex.indexRowKey( "19961990012", "18661990012_9223370324984787969" ) );
+    }
+
+    public void testIndexRowKeyOfSaltedRow()
+    {
+        assertEquals( "19961990012_9223370324984787969_18661990012",
+                CallLogDnumIndex.indexRowKey( "19961990012", "07_18661990012_9223370324984787969" ) );
+    }
+
+    public void testIndexRowKeyKeepsSequenceSuffix()
+    {
+        assertEquals( "19961990012_9223370324984787969#12_18661990012",
+                CallLogDnumIndex.indexRowKey( "19961990012", "07_18661990012_9223370324984787969#12" ) );
+    }
+
+    public void testIndexRowKeyRejectsUnknownFormat()
+    {
+        assertNull( CallLogDnumIndex.indexRowKey( "19961990012", "18661990012" ) );
+    }
+
+    public void testIndexPutPointsToStoredRow()
+    {
+        byte[] row = Bytes.toBytes( "07_18661990012_9223370324984787969" );
+        Put put = CallLogDnumIndex.createIndexPut( "19961990012", row );
+        assertEquals( "19961990012_9223370324984787969_18661990012", Bytes.toString( put.getRow() ) );
+        Cell cell = put.get( CallLogDnumIndex.FAMILY, CallLogDnumIndex.ROWKEY ).get( 0 );
+        assertTrue( Bytes.equals( row, CellUtil.cloneValue( cell ) ) );
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unit test for CallLogGenerator.
+ */
+public class CallLogGeneratorTest
+    extends TestCase
+{
+    private static Map<String, String> generate( int threads ) throws Exception
+    {
+        Map<String, String> rows = new ConcurrentHashMap<>();
+        long records = new CallLogGenerator( 7 ).users( 20 ).years( 2023, 2024 ).recordsPerUser( 500 )
+                .callerSkew( 1.0 ).calleeSkew( 1.0, 1000 ).threads( threads )
+                .generate( ( user, sequence, phoneNumber, dnum, type, length, callTime ) ->
+                        rows.put( CallLogDemo.getRowKey( phoneNumber, callTime, sequence ),
+                                dnum + "," + type + "," + length + "," + CallLogGenerator.formatDate( callTime ) ) );
+        assertEquals( 20 * 500, records );
+        // 每条记录的rowkey都不同，写入HBase时不会相互覆盖
+        assertEquals( records, rows.size() );
+        return rows;
+    }
+
+    public void testSameSeedSameDataRegardlessOfThreads() throws Exception
+    {
+        Map<String, String> single = generate( 1 );
+        assertEquals( 20 * 500, single.size() );
+        assertEquals( single, generate( 4 ) );
+    }
+
+    public void testSequenceDoesNotShiftCallTime()
+    {
+        // 通话时间精确到秒，序号相差1000的两条记录原来会得到相同的rowkey
+        long callTime = 1709251200000L;
+        assertFalse( CallLogDemo.getRowKey( "18661990012", callTime, 5 )
+                .equals( CallLogDemo.getRowKey( "18661990012", callTime + 1000, 1005 ) ) );
+        assertEquals( "18661990012_" + ( Long.MAX_VALUE - callTime ) + "#5",
+                CallLogDemo.getRowKey( "18661990012", callTime, 5 ) );
+    }
+
+    public void testZipfRecordCounts()
+    {
+        int[] counts = new CallLogGenerator( 1 ).users( 100 ).recordsPerUser( 1000 ).callerSkew( 1.0 ).getRecordCounts();
+        long total = 0;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            total += counts[i];
+            if ( i > 0 )
+            {
+                assertTrue( counts[i] <= counts[i - 1] );
+            }
+        }
+        assertEquals( 100 * 1000, total );
+        // 1/k分布下排名第1的用户约是第10名的10倍
+        assertEquals( 10.0, (double) counts[0] / counts[9], 0.1 );
+    }
+
+    public void testPhoneNumbersAreDistinct()
+    {
+        CallLogGenerator generator = new CallLogGenerator( 1 );
+        assertEquals( "18600000000", generator.getPhoneNumber( 0 ) );
+        assertEquals( 11, generator.getPhoneNumber( 12345 ).length() );
+        assertFalse( generator.getPhoneNumber( 1 ).equals( generator.getPhoneNumber( 2 ) ) );
+    }
+}
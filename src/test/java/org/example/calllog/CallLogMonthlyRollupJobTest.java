@@ -0,0 +1,54 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+/**
+ * Unit test for CallLogMonthlyRollupJob.
+ */
+public class CallLogMonthlyRollupJobTest
+    extends TestCase
+{
+    public void testRollupRowKey()
+    {
+        long callTime = 1709251200000L;
+        String date = "2024-03-01 08:00:00";
+        assertEquals( "18661990012_202403",
+                CallLogMonthlyRollupJob.rollupRowKey( Bytes.toBytes( "18661990012_" + ( Long.MAX_VALUE - callTime ) ), date ) );
+        // 加盐的rowkey
+        assertEquals( "18661990012_202403",
+                CallLogMonthlyRollupJob.rollupRowKey( Bytes.toBytes( "07_18661990012_" + ( Long.MAX_VALUE - callTime ) ), date ) );
+        assertEquals( "18661990012_202403", CallLogMonthlyRollupJob.rollupRowKey(
+                Bytes.toBytes( "07_" + CallLogDemo.getRowKey( "18661990012", callTime, 1234 ) ), date ) );
+        assertEquals( "18661990012_202403",
+                CallLogMonthlyRollupJob.rollupRowKey( CallLogRowKey.encode( 18661990012L, callTime, 3 ), date ) );
+        assertEquals( "18661990012_202403", CallLogMonthlyRollupJob.rollupRowKey(
+                new RowKeySalter( 16 ).salt( CallLogRowKey.encode( 18661990012L, callTime, 3 ) ), date ) );
+        assertNull( CallLogMonthlyRollupJob.rollupRowKey( Bytes.toBytes( "bad" ), date ) );
+    }
+
+    public void testRollupAddAndSerialize() throws Exception
+    {
+        CallLogMonthlyRollupJob.Rollup rollup = new CallLogMonthlyRollupJob.Rollup();
+        rollup.add( 0, 100 );
+        rollup.add( 1, 50 );
+        CallLogMonthlyRollupJob.Rollup other = new CallLogMonthlyRollupJob.Rollup();
+        other.add( 0, 30 );
+        rollup.add( other );
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        rollup.write( out );
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset( out.getData(), out.getLength() );
+        CallLogMonthlyRollupJob.Rollup copy = new CallLogMonthlyRollupJob.Rollup();
+        copy.readFields( in );
+
+        assertEquals( 3, copy.getCalls() );
+        assertEquals( 180, copy.getTotalLength() );
+        assertEquals( 60.0, copy.getAvgLength(), 0.0001 );
+        assertEquals( 2, copy.getOutbound() );
+        assertEquals( 1, copy.getInbound() );
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for CallLogProtobufFilter.
+ */
+public class CallLogProtobufFilterTest
+    extends TestCase
+{
+    public void testSerializationRoundTrip() throws Exception
+    {
+        CallLogProtobufFilter filter = new CallLogProtobufFilter()
+                .typeEquals( 0 )
+                .lengthBetween( 60, 200 )
+                .dateBetween( "2024-03-01 00:00:00", null );
+        CallLogProtobufFilter parsed = CallLogProtobufFilter.parseFrom( filter.toByteArray() );
+        assertEquals( filter.toString(), parsed.toString() );
+        assertTrue( Bytes.equals( filter.toByteArray(), parsed.toByteArray() ) );
+    }
+
+    public void testFiltersRowsOnDecodedFields() throws Exception
+    {
+        CallLogProtobufFilter filter = CallLogProtobufFilter.parseFrom( new CallLogProtobufFilter()
+                .typeEquals( 0 )
+                .lengthBetween( 60, 200 )
+                .dateBetween( "2024-03-01 00:00:00", "2024-04-01 00:00:00" )
+                .toByteArray() );
+
+        filter.reset();
+        filter.filterCell( cell( 0, 120, "2024-03-05 10:00:00" ) );
+        assertFalse( filter.filterRow() );
+
+        filter.reset();
+        filter.filterCell( cell( 1, 120, "2024-03-05 10:00:00" ) );
+        assertTrue( filter.filterRow() );
+
+        filter.reset();
+        filter.filterCell( cell( 0, 30, "2024-03-05 10:00:00" ) );
+        assertTrue( filter.filterRow() );
+
+        filter.reset();
+        filter.filterCell( cell( 0, 120, "2024-04-01 00:00:00" ) );
+        assertTrue( filter.filterRow() );
+
+        // 没有protobuf单元格的行
+        filter.reset();
+        assertTrue( filter.filterRow() );
+    }
+
+    private static KeyValue cell( int type, int length, String date )
+    {
+        byte[] value = CallLogOuterClass.CallLog.newBuilder()
+                .setType( type )
+                .setLength( length )
+                .setDnum( "19912345678" )
+                .setDate( date )
+                .build()
+                .toByteArray();
+        return new KeyValue( Bytes.toBytes( "18640455510_1" ), Bytes.toBytes( "basic" ), Bytes.toBytes( "dnum" ), value );
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.calllog;
+
+import com.amir.hbase.util.CallLogOuterClass;
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for CallLogProtobufView.
+ */
+public class CallLogProtobufViewTest
+    extends TestCase
+{
+    public void testDecodesSliceOfLargerArray() throws Exception
+    {
+        byte[] encoded = CallLogOuterClass.CallLog.newBuilder()
+                .setLength( 150 )
+                .setDnum( "19912345678" )
+                .setType( 1 )
+                .setDate( "2024-03-05 10:00:00" )
+                .build()
+                .toByteArray();
+        byte[] buffer = new byte[encoded.length + 7];
+        System.arraycopy( encoded, 0, buffer, 3, encoded.length );
+
+        CallLogProtobufView view = new CallLogProtobufView().wrap( buffer, 3, encoded.length );
+        assertEquals( 1, view.getType() );
+        assertEquals( 150, view.getLength() );
+        assertEquals( "2024-03-05 10:00:00", view.getDate() );
+        assertEquals( "19912345678", view.getDnum() );
+        assertTrue( view.compareDate( Bytes.toBytes( "2024-03-01 00:00:00" ) ) > 0 );
+        assertEquals( 0, view.compareDnum( Bytes.toBytes( "19912345678" ) ) );
+    }
+
+    public void testMissingFieldsUseDefaults() throws Exception
+    {
+        byte[] encoded = CallLogOuterClass.CallLog.newBuilder().setLength( 5 ).build().toByteArray();
+        CallLogProtobufView view = new CallLogProtobufView().wrap( encoded, 0, encoded.length );
+        assertEquals( 0, view.getType() );
+        assertEquals( 5, view.getLength() );
+        assertEquals( "", view.getDnum() );
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.text.SimpleDateFormat;
+
+/**
+ * Unit test for CallLogQuery.
+ */
+public class CallLogQueryTest
+    extends TestCase
+{
+    public void testProjectionAndLimit() throws Exception
+    {
+        Scan scan = CallLogQuery.forUser( "18661990012" )
+                .between( "2024-03-01 00:00:00", "2024-04-01 00:00:00" )
+                .select( CallLogQuery.Field.DNUM, CallLogQuery.Field.LENGTH )
+                .limit( 50 )
+                .toScan();
+        assertEquals( 2, scan.getFamilyMap().get( Bytes.toBytes( "basic" ) ).size() );
+        assertEquals( 50, scan.getLimit() );
+        assertEquals( 50, scan.getCaching() );
+        assertFalse( scan.hasFilter() );
+        assertTrue( Bytes.toString( scan.getStartRow() ).startsWith( "18661990012_" ) );
+        assertTrue( Bytes.compareTo( scan.getStartRow(), scan.getStopRow() ) < 0 );
+        assertFalse( scan.includeStopRow() );
+        assertTrue( scan.getTimeRange().isAllTime() );
+    }
+
+    public void testCellTimestampsSetTimeRange() throws Exception
+    {
+        Scan scan = CallLogQuery.forUser( "18661990012" )
+                .between( "2024-03-01 00:00:00", "2024-04-01 00:00:00" )
+                .cellTimestamps( true )
+                .toScan();
+        SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss" );
+        assertEquals( format.parse( "2024-03-01 00:00:00" ).getTime(), scan.getTimeRange().getMin() );
+        assertEquals( format.parse( "2024-04-01 00:00:00" ).getTime(), scan.getTimeRange().getMax() );
+
+        // 没有时间段时不限制时间范围
+        scan = CallLogQuery.forUser( "18661990012" ).cellTimestamps( true ).toScan();
+        assertTrue( scan.getTimeRange().isAllTime() );
+    }
+
+    public void testTypeFilterAddsTypeColumn() throws Exception
+    {
+        Scan scan = CallLogQuery.forUser( "18661990012" )
+                .type( 0 )
+                .select( CallLogQuery.Field.DNUM )
+                .toScan();
+        assertEquals( 2, scan.getFamilyMap().get( Bytes.toBytes( "basic" ) ).size() );
+        assertTrue( scan.getFilter() instanceof SingleColumnValueFilter );
+        assertTrue( scan.getCaching() > 100 );
+        assertEquals( "18661990012_", Bytes.toString( scan.getStartRow() ) );
+        assertEquals( "18661990012`", Bytes.toString( scan.getStopRow() ) );
+    }
+}
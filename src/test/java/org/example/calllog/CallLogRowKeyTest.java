@@ -0,0 +1,59 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for CallLogRowKey.
+ */
+public class CallLogRowKeyTest
+    extends TestCase
+{
+    public void testEncodeDecodeRoundTrip()
+    {
+        byte[] buffer = new byte[CallLogRowKey.LENGTH + 4];
+        int written = CallLogRowKey.encode( buffer, 4, 18661990012L, 1709251200000L, 65535 );
+        assertEquals( CallLogRowKey.LENGTH, written );
+        assertEquals( 18661990012L, CallLogRowKey.getPhoneNumber( buffer, 4 ) );
+        assertEquals( 1709251200000L, CallLogRowKey.getCallTime( buffer, 4 ) );
+        assertEquals( 65535, CallLogRowKey.getSequence( buffer, 4 ) );
+    }
+
+    public void testNewerCallsSortFirst()
+    {
+        byte[] older = CallLogRowKey.encode( 18661990012L, 1709251200000L, 0 );
+        byte[] newer = CallLogRowKey.encode( 18661990012L, 1709251200001L, 0 );
+        byte[] otherUser = CallLogRowKey.encode( 18661990013L, 0L, 0 );
+        assertTrue( Bytes.compareTo( newer, older ) < 0 );
+        assertTrue( Bytes.compareTo( older, otherUser ) < 0 );
+    }
+
+    public void testTimeRangeBounds()
+    {
+        long phone = 18661990012L;
+        long from = 1709251200000L;
+        long to = 1711929600000L;
+        byte[] start = CallLogRowKey.startRow( phone, to );
+        byte[] stop = CallLogRowKey.stopRow( phone, from );
+        assertInRange( CallLogRowKey.encode( phone, from, CallLogRowKey.MAX_SEQUENCE ), start, stop );
+        assertInRange( CallLogRowKey.encode( phone, to - 1, 0 ), start, stop );
+        assertTrue( Bytes.compareTo( CallLogRowKey.encode( phone, to, CallLogRowKey.MAX_SEQUENCE ), start ) < 0 );
+        assertTrue( Bytes.compareTo( CallLogRowKey.encode( phone, from - 1, 0 ), stop ) >= 0 );
+    }
+
+    private static void assertInRange( byte[] rowkey, byte[] start, byte[] stop )
+    {
+        assertTrue( Bytes.compareTo( rowkey, start ) >= 0 );
+        assertTrue( Bytes.compareTo( rowkey, stop ) < 0 );
+    }
+
+    public void testOffsetOfStoredRowKey()
+    {
+        byte[] binary = CallLogRowKey.encode( 18661990012L, 1709251200000L, 0 );
+        assertEquals( 0, CallLogRowKey.offsetOf( binary ) );
+        assertEquals( 3, CallLogRowKey.offsetOf( new RowKeySalter( 16 ).salt( binary ) ) );
+        String rowkey = "18661990012_9223370324984787969";
+        assertEquals( -1, CallLogRowKey.offsetOf( Bytes.toBytes( rowkey ) ) );
+        assertEquals( -1, CallLogRowKey.offsetOf( Bytes.toBytes( new RowKeySalter( 16 ).salt( rowkey ) ) ) );
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for CallLogView.
+ */
+public class CallLogViewTest
+    extends TestCase
+{
+    public void testReadsFieldsByQualifier()
+    {
+        byte[] row = Bytes.toBytes( "18661990012_9223370324984787969" );
+        byte[] family = Bytes.toBytes( "basic" );
+        Result result = Result.create( new Cell[] {
+                new KeyValue( row, family, Bytes.toBytes( "date" ), Bytes.toBytes( "2024-03-05 10:00:00" ) ),
+                new KeyValue( row, family, Bytes.toBytes( "dnum" ), Bytes.toBytes( "19912345678" ) ),
+                new KeyValue( row, family, Bytes.toBytes( "length" ), Bytes.toBytes( 120 ) ),
+                new KeyValue( row, family, Bytes.toBytes( "type" ), Bytes.toBytes( 1 ) ) } );
+        CallLogView view = new CallLogView().wrap( result );
+        assertEquals( 1, view.getType() );
+        assertEquals( 120, view.getLength() );
+        assertEquals( "19912345678", view.getDnum() );
+        assertEquals( "rowkey:18661990012_9223370324984787969,date:2024-03-05 10:00:00,dnum:19912345678,length:120,type:1",
+                view.appendTo( new StringBuilder() ).toString() );
+    }
+
+    public void testMissingFieldsAreSkipped()
+    {
+        byte[] row = Bytes.toBytes( "18661990012_1" );
+        Result result = Result.create( new Cell[] {
+                new KeyValue( row, Bytes.toBytes( "basic" ), Bytes.toBytes( "type" ), Bytes.toBytes( 0 ) ) } );
+        CallLogView view = new CallLogView().wrap( result );
+        assertFalse( view.hasDnum() );
+        assertEquals( "rowkey:18661990012_1,type:0", view.appendTo( new StringBuilder() ).toString() );
+        CallLogRecord record = CallLogRecord.fromView( view );
+        assertNull( record.getLength() );
+        assertEquals( Integer.valueOf( 0 ), record.getType() );
+    }
+}
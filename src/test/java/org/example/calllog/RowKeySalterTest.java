@@ -0,0 +1,45 @@
+package org.example.calllog;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Unit test for RowKeySalter.
+ */
+public class RowKeySalterTest
+    extends TestCase
+{
+    public void testSaltIsStableAndReversible()
+    {
+        RowKeySalter salter = new RowKeySalter( 16 );
+        String rowkey = "18661990012_9223370324984787969";
+        String salted = salter.salt( rowkey );
+        assertEquals( salted, salter.salt( rowkey ) );
+        assertTrue( salted.endsWith( "_" + rowkey ) );
+        assertEquals( 3 + rowkey.length(), salted.length() );
+        assertEquals( rowkey, salter.unsalt( salted ) );
+    }
+
+    public void testSplitKeysMatchBucketPrefixes()
+    {
+        RowKeySalter salter = new RowKeySalter( 16 );
+        byte[][] splitKeys = salter.getSplitKeys();
+        assertEquals( 15, splitKeys.length );
+        assertEquals( "01_", Bytes.toString( splitKeys[0] ) );
+        assertEquals( "15_", Bytes.toString( splitKeys[14] ) );
+        for ( int i = 1; i < splitKeys.length; i++ )
+        {
+            assertTrue( Bytes.compareTo( splitKeys[i - 1], splitKeys[i] ) < 0 );
+        }
+        String salted = salter.salt( "18661990012_9223370324984787969" );
+        int bucket = salter.bucketOf( "18661990012_9223370324984787969" );
+        assertTrue( salted.startsWith( String.format( "%02d_", bucket ) ) );
+    }
+
+    public void testSingleBucketHasNoSplits()
+    {
+        RowKeySalter salter = new RowKeySalter( 1 );
+        assertEquals( 0, salter.getSplitKeys().length );
+        assertEquals( "0_abc", salter.salt( "abc" ) );
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LatencyHistogram.
+ */
+public class LatencyHistogramTest
+    extends TestCase
+{
+    public void testBucketsCoverEveryValue()
+    {
+        for ( long value = 0; value < 100000; value++ )
+        {
+            int index = LatencyHistogram.indexOf( value );
+            assertTrue( value <= LatencyHistogram.upperBoundOf( index ) );
+            assertTrue( index == 0 || value > LatencyHistogram.upperBoundOf( index - 1 ) );
+        }
+    }
+
+    public void testQuantilesWithinRelativeError()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( long i = 1; i <= 100000; i++ )
+        {
+            histogram.record( i * 1000 );
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals( 100000, snapshot.getCount() );
+        assertEquals( 100000000L, snapshot.getMaxNanos() );
+        assertEquals( 50000500.0, snapshot.getMeanNanos(), 1 );
+        assertEquals( 50000000, snapshot.getValueAtQuantile( 0.5 ), 50000000 / 32 );
+        assertEquals( 99000000, snapshot.getValueAtQuantile( 0.99 ), 99000000 / 32 );
+        assertEquals( 100000000L, snapshot.getValueAtQuantile( 1 ) );
+    }
+
+    public void testRegistryReusesMetrics()
+    {
+        MetricsRegistry registry = new MetricsRegistry();
+        OperationMetrics metrics = registry.get( "t1", "get" );
+        assertSame( metrics, registry.get( "t1", "get" ) );
+        metrics.recordSuccess( System.nanoTime(), 10, 20 );
+        metrics.recordFailure( System.nanoTime() );
+        assertEquals( 2, metrics.getCount() );
+        assertEquals( 1, metrics.getErrors() );
+        assertEquals( 20, metrics.getBytesReceived() );
+        assertEquals( 1, registry.getAll().size() );
+    }
+}